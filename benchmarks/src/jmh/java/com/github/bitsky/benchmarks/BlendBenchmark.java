@@ -0,0 +1,71 @@
+package com.github.bitsky.benchmarks;
+
+import com.github.bitsky.AnimatedSprite;
+import com.github.bitsky.AnimatedSpritePose;
+import com.github.bitsky.PoseBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chains of lerp and add operations as produced by Blend Pose and Add Pose nodes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BlendBenchmark {
+    @Param({"10", "100", "500"})
+    public int bones;
+    @Param({"1", "4", "16"})
+    public int chain;
+
+    private AnimatedSpritePose[] poses;
+    private PoseBuffer[] buffers;
+    private PoseBuffer result;
+
+    @Setup
+    public void setup(){
+        AnimatedSprite sprite = Fixtures.createSprite(bones, 3);
+        poses = new AnimatedSpritePose[chain+1];
+        buffers = new PoseBuffer[chain+1];
+        for(int i = 0;i <= chain;i++){
+            buffers[i] = new PoseBuffer(sprite.getBoneCapacity());
+            Fixtures.createAnimation(sprite, 4, 1, i).getPose(0.3f, sprite, buffers[i]);
+            poses[i] = buffers[i].toPose(sprite);
+        }
+        result = new PoseBuffer(sprite.getBoneCapacity());
+    }
+
+    @Benchmark
+    public AnimatedSpritePose lerpLegacyPoses(){
+        AnimatedSpritePose pose = poses[0];
+        for(int i = 1;i <= chain;i++){
+            pose = pose.lerp(poses[i], 0.5f);
+        }
+        return pose;
+    }
+    @Benchmark
+    public AnimatedSpritePose addLegacyPoses(){
+        AnimatedSpritePose pose = poses[0];
+        for(int i = 1;i <= chain;i++){
+            pose = pose.add(poses[i]);
+        }
+        return pose;
+    }
+    @Benchmark
+    public PoseBuffer lerpPoseBuffers(){
+        result.copyFrom(buffers[0]);
+        for(int i = 1;i <= chain;i++){
+            result.lerpInto(buffers[i], 0.5f, result);
+        }
+        return result;
+    }
+    @Benchmark
+    public PoseBuffer addPoseBuffers(){
+        result.copyFrom(buffers[0]);
+        for(int i = 1;i <= chain;i++){
+            result.addInto(buffers[i], result);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.bitsky.benchmarks;
+
+import com.github.bitsky.AnimatedSprite;
+import com.github.bitsky.AnimatedSpriteBone;
+import com.github.bitsky.PoseBuffer;
+import com.github.bitsky.runtime.IKBatch;
+import com.github.bitsky.runtime.IKConstraintNode;
+import com.github.bitsky.runtime.IKSolver2D;
+import com.github.bitsky.runtime.SymmetryConstraintNode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IK Constraint and Symmetry Constraint nodes applied to a sampled pose. The constrained chain is a spine of
+ * chainLength joints hanging off the deepest bone of a binary tree of the other bones, so its length does not depend on
+ * the tree depth and 3 joints take the analytic two bone path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ConstraintBenchmark {
+    public static final int INSTANCES = 1000;
+    @Param({"10", "100", "500"})
+    public int bones;
+    /**
+     * Joints of the chain, one more than its segments.
+     */
+    @Param({"3", "8", "32"})
+    public int chainLength;
+
+    private AnimatedSprite sprite;
+    private ArrayList<AnimatedSpriteBone> chain;
+    private PoseBuffer input;
+    private PoseBuffer output;
+    private IKConstraintNode.Chain ikChain;
+    private SymmetryConstraintNode.Bones symmetryBones;
+    private IKSolver2D solver;
+    private PoseBuffer world;
+    private float[] warmStart;
+    private PoseBuffer[] crowd;
+    private IKBatch batch;
+
+    @Setup
+    public void setup(){
+        sprite = Fixtures.createSprite(bones, 2);
+        chain = Fixtures.addSpine(sprite, Fixtures.getChain(sprite, 1).get(0), chainLength);
+        input = new PoseBuffer(sprite.getBoneCapacity());
+        output = new PoseBuffer(sprite.getBoneCapacity());
+        ikChain = IKConstraintNode.Chain.resolve(sprite, chain.get(0).id, chain.get(chain.size()-1).id, sprite.rootBone.id);
+        symmetryBones = SymmetryConstraintNode.Bones.resolve(sprite, chain.get(chain.size()-1).id, chain.get(0).id, sprite.rootBone.id);
+        solver = new IKSolver2D();
+        world = new PoseBuffer(sprite.getBoneCapacity());
+        warmStart = new float[chain.size()-1];
+        crowd = new PoseBuffer[INSTANCES];
+        batch = new IKBatch(INSTANCES);
+        for(int i = 0;i < INSTANCES;i++){
+            crowd[i] = new PoseBuffer(sprite.getBoneCapacity());
+            batch.add(sprite, crowd[i], chain.get(0).id, chain.get(chain.size()-1).id, sprite.rootBone.id, IKConstraintNode.Limits.COUNTERCLOCKWISE);
+        }
+        Fixtures.createAnimation(sprite, 4, 1, 4).getPose(0.6f, sprite, input);
+    }
+
+    @Benchmark
+    public PoseBuffer solveIK(){
+        Arrays.fill(warmStart, Float.NaN);
+        IKConstraintNode.solve(sprite, input, ikChain, IKConstraintNode.Limits.COUNTERCLOCKWISE, solver, world, warmStart, output);
+        return output;
+    }
+    /**
+     * Starting from the solution of the previous call, like every frame after the first one.
+     */
+    @Benchmark
+    public PoseBuffer solveIKWarm(){
+        warmStart = IKConstraintNode.solve(sprite, input, ikChain, IKConstraintNode.Limits.COUNTERCLOCKWISE, solver, world, warmStart, output);
+        return output;
+    }
+    /**
+     * The chain of {@link #INSTANCES} poses solved on the common pool.
+     */
+    @Benchmark
+    public IKBatch solveIKBatch(){
+        for(PoseBuffer pose : crowd){
+            pose.copyFrom(input);
+        }
+        batch.solve();
+        return batch;
+    }
+    @Benchmark
+    public PoseBuffer solveSymmetry(){
+        SymmetryConstraintNode.solve(sprite, input, symmetryBones, world, output);
+        return output;
+    }
+}
@@ -0,0 +1,171 @@
+package com.github.bitsky.benchmarks;
+
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import com.github.bitsky.AnimatedSprite;
+import com.github.bitsky.AnimatedSpriteBone;
+import com.github.bitsky.AnimationTrack;
+import com.github.bitsky.EInterpolationFunction;
+import com.github.bitsky.SpriteAnimation;
+import com.github.bitsky.VertexedImage;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Generated sprites, animations and graphs, seeded so every fork benchmarks the same data.
+ */
+public class Fixtures {
+    public static final int IMAGE_SIZE = 256;
+
+    /**
+     * @param branching children per bone, 1 builds a single chain
+     */
+    public static AnimatedSprite createSprite(int boneCount, int branching){
+        AnimatedSprite sprite = new AnimatedSprite();
+        ArrayList<AnimatedSpriteBone> bones = new ArrayList<>();
+        bones.add(sprite.rootBone);
+        for(int i = 1;i < boneCount;i++){
+            AnimatedSpriteBone bone = sprite.addChildNodeTo(bones.get((i-1)/branching));
+            bone.baseTransform.translation.set(12, 0);
+            bone.baseTransform.rotation = 0.1f;
+            bones.add(bone);
+        }
+        return sprite;
+    }
+    public static ArrayList<AnimatedSpriteBone> getBones(AnimatedSprite sprite){
+        ArrayList<AnimatedSpriteBone> bones = new ArrayList<>();
+        for(int index : sprite.getBoneOrder()){
+            bones.add(sprite.getBone(index));
+        }
+        return bones;
+    }
+    /**
+     * Adds a spine of length bones hanging one after another off parent.
+     * @return the new bones ordered from parent
+     */
+    public static ArrayList<AnimatedSpriteBone> addSpine(AnimatedSprite sprite, AnimatedSpriteBone parent, int length){
+        ArrayList<AnimatedSpriteBone> spine = new ArrayList<>();
+        for(int i = 0;i < length;i++){
+            parent = sprite.addChildNodeTo(parent);
+            parent.baseTransform.translation.set(12, 0);
+            parent.baseTransform.rotation = 0.1f;
+            spine.add(parent);
+        }
+        return spine;
+    }
+    /**
+     * Up to length bones ending at the deepest bone, ordered from the root side, without the root bone.
+     */
+    public static ArrayList<AnimatedSpriteBone> getChain(AnimatedSprite sprite, int length){
+        int[] parents = sprite.getParentIndices();
+        int[] depths = new int[sprite.getBoneCapacity()];
+        int deepest = sprite.rootBone.index;
+        for(int index : sprite.getBoneOrder()){
+            depths[index] = parents[index] == -1 ? 0 : depths[parents[index]]+1;
+            if(depths[index] > depths[deepest])
+                deepest = index;
+        }
+        ArrayList<AnimatedSpriteBone> chain = new ArrayList<>();
+        for(int index = deepest;index != -1 && parents[index] != -1 && chain.size() < length;index = parents[index]){
+            chain.add(0, sprite.getBone(index));
+        }
+        return chain;
+    }
+
+    /**
+     * Animates translation, rotation and scale of every bone with keyframes spread evenly over length.
+     */
+    public static SpriteAnimation createAnimation(AnimatedSprite sprite, int keyframes, float length, long seed){
+        Random random = new Random(seed);
+        EInterpolationFunction[] functions = EInterpolationFunction.values();
+        SpriteAnimation animation = new SpriteAnimation();
+        for(AnimatedSpriteBone bone : getBones(sprite)){
+            AnimationTrack track = animation.getTrack(bone.id);
+            for(int i = 0;i < keyframes;i++){
+                float time = keyframes == 1 ? 0 : length*i/(keyframes-1);
+                EInterpolationFunction function = functions[random.nextInt(functions.length)];
+                track.translations.addKeyframe(time, new Vector2(random.nextFloat()*20, random.nextFloat()*20-10), function);
+                track.rotations.addKeyframe(time, random.nextFloat()*2-1, function);
+                track.scales.addKeyframe(time, 0.5f+random.nextFloat(), function);
+            }
+        }
+        return animation;
+    }
+
+    /**
+     * Image with randomly placed points weighted to up to {@link VertexedImage#MAX_INFLUENCES} random bones.
+     * Loads the desktop natives for the pixmap, no GL context is needed.
+     */
+    public static VertexedImage createImage(AnimatedSprite sprite, int vertexCount, long seed){
+        GdxNativesLoader.load();
+        Random random = new Random(seed);
+        ArrayList<AnimatedSpriteBone> bones = getBones(sprite);
+        VertexedImage image = new VertexedImage(null, "image");
+        image.setPixmap(new Pixmap(IMAGE_SIZE, IMAGE_SIZE, Pixmap.Format.RGBA8888), false);
+        for(int i = 0;i < vertexCount;i++){
+            HashMap<UUID, Float> weights = new HashMap<>();
+            int influences = 1+random.nextInt(VertexedImage.MAX_INFLUENCES);
+            for(int j = 0;j < influences;j++){
+                weights.put(bones.get(random.nextInt(bones.size())).id, random.nextFloat());
+            }
+            image.points.add(new VertexedImage.Vertex(new Vector2(random.nextFloat()*IMAGE_SIZE, random.nextFloat()*IMAGE_SIZE), weights));
+        }
+        image.invalidateMesh();
+        sprite.images.add(image);
+        return image;
+    }
+
+    /**
+     * Graph in the project format blending two animations by the property "blend", playing at the speed of the property "speed"
+     * and then applying an IK constraint reaching for the root with the three deepest bones.
+     */
+    public static JSONObject createGraph(AnimatedSprite sprite, SpriteAnimation first, SpriteAnimation second){
+        String firstId = UUID.randomUUID().toString();
+        String secondId = UUID.randomUUID().toString();
+        String blendId = UUID.randomUUID().toString();
+        String speedId = UUID.randomUUID().toString();
+        String ikId = UUID.randomUUID().toString();
+        JSONObject nodes = new JSONObject();
+        nodes.put(firstId, node("Animated Pose", new JSONObject()).put("looping", true).put("animation", first.save()));
+        nodes.put(secondId, node("Animated Pose", new JSONObject()).put("looping", true).put("animation", second.save()));
+        nodes.put(blendId, node("Blend Pose", new JSONObject().put("Pose1", firstId).put("Pose2", secondId)).put("blendValue", "blend"));
+        nodes.put(speedId, node("Playback Speed", new JSONObject().put("Pose", blendId)).put("speed", "speed*2"));
+        ArrayList<AnimatedSpriteBone> chain = getChain(sprite, 3);
+        JSONObject ik = node("IK Constraint", new JSONObject().put("Input", speedId)).put("clockwise", false);
+        if(chain.size() == 3){
+            ik.put("start", chain.get(0).id.toString());
+            ik.put("end", chain.get(2).id.toString());
+            ik.put("target", sprite.rootBone.id.toString());
+        }
+        nodes.put(ikId, ik);
+
+        JSONObject properties = new JSONObject();
+        for(JSONObject property : new JSONObject[]{property("blend", 0.5f), property("speed", 0.5f)}){
+            properties.put(property.getString("id"), property);
+        }
+
+        JSONObject graph = new JSONObject();
+        graph.put("nodes", nodes);
+        graph.put("final", node("Final Pose", new JSONObject().put("Out", ikId)));
+        graph.put("properties", properties);
+        return graph;
+    }
+    private static JSONObject node(String type, JSONObject inputs){
+        JSONObject json = new JSONObject();
+        json.put("type", type);
+        json.put("inputs", inputs);
+        return json;
+    }
+    private static JSONObject property(String name, float value){
+        JSONObject json = new JSONObject();
+        json.put("id", UUID.randomUUID().toString());
+        json.put("name", name);
+        json.put("value", value);
+        return json;
+    }
+}
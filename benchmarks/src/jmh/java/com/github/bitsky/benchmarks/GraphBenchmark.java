@@ -0,0 +1,69 @@
+package com.github.bitsky.benchmarks;
+
+import com.github.bitsky.AnimatedSprite;
+import com.github.bitsky.PoseBuffer;
+import com.github.bitsky.runtime.AnimationAsset;
+import com.github.bitsky.runtime.AnimationInstance;
+import com.github.bitsky.runtime.GraphDefinition;
+import com.github.bitsky.runtime.GraphEvaluator;
+import com.github.bitsky.runtime.GraphInstance;
+import com.github.bitsky.runtime.InstanceBatch;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ticking and evaluating a whole graph, see {@link Fixtures#createGraph}.
+ * Uses the runtime graph, the editor graph nodes need a scene2d stage.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GraphBenchmark {
+    @Param({"10", "100", "500"})
+    public int bones;
+    @Param({"16"})
+    public int keyframes;
+    private static final int INSTANCES = 1000;
+
+    private AnimatedSprite sprite;
+    private GraphInstance graph;
+    private GraphEvaluator evaluator;
+    private AnimationInstance[] animationInstances;
+    private AnimationAsset asset;
+    private InstanceBatch batch;
+
+    @Setup
+    public void setup(){
+        sprite = Fixtures.createSprite(bones, 3);
+        GraphDefinition definition = GraphDefinition.load(Fixtures.createGraph(sprite,
+            Fixtures.createAnimation(sprite, keyframes, 2, 5), Fixtures.createAnimation(sprite, keyframes, 3, 6)));
+        graph = new GraphInstance(definition);
+        evaluator = new GraphEvaluator(definition);
+        asset = new AnimationAsset(sprite, definition);
+        animationInstances = new AnimationInstance[INSTANCES];
+        batch = new InstanceBatch(asset, INSTANCES);
+        for(int i = 0;i < INSTANCES;i++){
+            animationInstances[i] = asset.createInstance();
+            batch.add();
+        }
+    }
+
+    @Benchmark
+    public PoseBuffer tickAndEvaluate(){
+        graph.tick(1/60f);
+        PoseBuffer pose = evaluator.evaluate(graph, sprite);
+        graph.endFrame();
+        return pose;
+    }
+    @Benchmark
+    @OperationsPerInvocation(INSTANCES)
+    public void updateInstances(){
+        asset.update(animationInstances, INSTANCES, 1/60f, evaluator);
+    }
+    @Benchmark
+    @OperationsPerInvocation(INSTANCES)
+    public void updateBatch(){
+        batch.update(1/60f);
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.bitsky.benchmarks;
+
+import com.github.bitsky.AnimatedSprite;
+import com.github.bitsky.AnimatedSpritePose;
+import com.github.bitsky.BakedClip;
+import com.github.bitsky.CompressedClip;
+import com.github.bitsky.PoseBuffer;
+import com.github.bitsky.SpriteAnimation;
+import com.github.bitsky.Transform;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sampling one animation into a pose and composing it into world transforms.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PoseSamplingBenchmark {
+    @Param({"10", "100", "500"})
+    public int bones;
+    @Param({"2", "16", "128"})
+    public int keyframes;
+
+    private AnimatedSprite sprite;
+    private SpriteAnimation animation;
+    private BakedClip baked;
+    private CompressedClip compressed;
+    private PoseBuffer pose;
+    private PoseBuffer world;
+    private float time;
+
+    @Setup
+    public void setup(){
+        sprite = Fixtures.createSprite(bones, 3);
+        animation = Fixtures.createAnimation(sprite, keyframes, 4, 1);
+        baked = BakedClip.bake(animation, 60, 0.001f);
+        compressed = CompressedClip.compress(BakedClip.bake(animation, 60, 0), 0.001f);
+        pose = new PoseBuffer(sprite.getBoneCapacity());
+        world = new PoseBuffer(sprite.getBoneCapacity());
+    }
+    /**
+     * Advances like playback at 60 fps, so sequential keyframe lookup is measured.
+     */
+    private float nextTime(){
+        time += 1/60f;
+        if(time > 4)
+            time -= 4;
+        return time;
+    }
+
+    @Benchmark
+    public AnimatedSpritePose sampleLegacyPose(){
+        return animation.getPose(nextTime());
+    }
+    @Benchmark
+    public PoseBuffer sampleAnimation(){
+        animation.getPose(nextTime(), sprite, pose);
+        return pose;
+    }
+    @Benchmark
+    public PoseBuffer sampleBakedClip(){
+        baked.getPose(nextTime(), sprite, pose);
+        return pose;
+    }
+    @Benchmark
+    public PoseBuffer sampleCompressedClip(){
+        compressed.getPose(nextTime(), sprite, pose);
+        return pose;
+    }
+    @Benchmark
+    public void composeLegacyPose(Blackhole blackhole){
+        blackhole.consume(animation.getPose(nextTime()).getBoneTransforms(sprite, new Transform().lock()));
+    }
+    @Benchmark
+    public PoseBuffer composeWorldPose(){
+        animation.getPose(nextTime(), sprite, pose);
+        pose.computeWorldInto(sprite, world);
+        return world;
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.bitsky.benchmarks;
+
+import com.github.bitsky.AnimatedSprite;
+import com.github.bitsky.PoseBuffer;
+import com.github.bitsky.SpriteAnimation;
+import com.github.bitsky.VertexedImage;
+import com.github.bitsky.runtime.AnimationAsset;
+import com.github.bitsky.runtime.GraphDefinition;
+import com.github.bitsky.runtime.MeshDeformer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deforming one image by a sampled pose, through the editor image and through the shared runtime mesh.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SkinningBenchmark {
+    @Param({"10", "100"})
+    public int bones;
+    @Param({"1000", "10000", "50000"})
+    public int vertices;
+
+    private AnimatedSprite sprite;
+    private VertexedImage image;
+    private MeshDeformer deformer;
+    private PoseBuffer pose;
+
+    @Setup
+    public void setup(){
+        sprite = Fixtures.createSprite(bones, 3);
+        image = Fixtures.createImage(sprite, vertices, 2);
+        SpriteAnimation animation = Fixtures.createAnimation(sprite, 4, 1, 3);
+        pose = new PoseBuffer(sprite.getBoneCapacity());
+        animation.getPose(0.4f, sprite, pose);
+        image.getTriangles();
+        GraphDefinition graph = GraphDefinition.load(Fixtures.createGraph(sprite, animation, animation));
+        deformer = new MeshDeformer(new AnimationAsset(sprite, graph));
+    }
+
+    @Benchmark
+    public float[] deformImage(){
+        return image.deform(sprite, pose);
+    }
+    @Benchmark
+    public float[] deformSkinnedMesh(){
+        deformer.setPose(pose);
+        return deformer.deform(0);
+    }
+}
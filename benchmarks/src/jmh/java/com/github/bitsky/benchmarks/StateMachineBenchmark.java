@@ -0,0 +1,70 @@
+package com.github.bitsky.benchmarks;
+
+import com.badlogic.gdx.math.Vector2;
+import com.github.bitsky.AnimationStateMachine;
+import com.github.bitsky.runtime.CompiledStateMachine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checking the transitions of a state machine where every state has transitions to the next states,
+ * taken when the property "state" equals their index.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class StateMachineBenchmark {
+    @Param({"10", "100", "1000"})
+    public int states;
+    private static final int TRANSITIONS = 8;
+
+    private CompiledStateMachine machine;
+    private CompiledStateMachine.Trigger trigger;
+    private float[] properties;
+    private int state;
+
+    @Setup
+    public void setup(){
+        AnimationStateMachine stateMachine = new AnimationStateMachine();
+        ArrayList<AnimationStateMachine.State> stateList = new ArrayList<>();
+        stateList.add(stateMachine.states.get(stateMachine.startState));
+        for(int i = 1;i < states;i++){
+            stateList.add(stateMachine.addState(new Vector2()));
+        }
+        UUID property = UUID.randomUUID();
+        for(int i = 0;i < states;i++){
+            for(int j = 1;j <= TRANSITIONS;j++){
+                int target = (i+j)%states;
+                stateList.get(i).addTransition(stateList.get(target));
+                stateList.get(i).transitions.get(j-1).conditions.add(new AnimationStateMachine.TransitionCondition(property, target, AnimationStateMachine.EComparator.Equal));
+            }
+        }
+        machine = CompiledStateMachine.compile(stateMachine, id -> id.equals(property) ? 0 : -1);
+        trigger = machine.createTrigger();
+        properties = new float[]{-1};
+        state = machine.startState;
+    }
+
+    /**
+     * No property changed, the transitions are not checked.
+     */
+    @Benchmark
+    public int tickUnchanged(){
+        if(machine.update(trigger, state, properties, false))
+            return machine.findTransition(state, properties, false);
+        return -1;
+    }
+    /**
+     * The property changes every tick, so all transitions of the state are checked.
+     */
+    @Benchmark
+    public int tickChanged(){
+        properties[0] = properties[0] == -1 ? -2 : -1;
+        if(machine.update(trigger, state, properties, false))
+            return machine.findTransition(state, properties, false);
+        return -1;
+    }
+}
@@ -7,7 +7,9 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -15,11 +17,29 @@ public class AnimatedSprite {
     public final HashMap<UUID, AnimatedSpriteBone> bones;
     public AnimatedSpriteBone rootBone;
     public ArrayList<VertexedImage> images;
+    private final ArrayList<AnimatedSpriteBone> indexedBones;
+    private int[] boneOrder;
+    private int[] orderPositions;
+    private int[] subtreeEnds;
+    private int[] parentIndices;
+    private int hierarchyVersion;
+    private boolean hierarchyDirty;
+    private int modificationCount;
+    private int bindPoseVersion;
+    private PoseBuffer bindPose;
+    private float[] bindInverses;
     public AnimatedSprite() {
         this.bones = new HashMap<>();
+        this.indexedBones = new ArrayList<>();
+        this.hierarchyVersion = 0;
+        this.hierarchyDirty = true;
+        this.modificationCount = 0;
+        this.bindPoseVersion = -1;
+        this.bindPose = new PoseBuffer(0);
+        this.bindInverses = new float[0];
         this.rootBone = new AnimatedSpriteBone(this, null);
         this.rootBone.name = "root";
-        this.bones.put(this.rootBone.id, this.rootBone);
+        addBone(this.rootBone);
         this.images = new ArrayList<>();
     }
     public JSONObject save(){
@@ -38,26 +58,84 @@ public class AnimatedSprite {
         return json;
     }
     public void load(JSONObject json){
-        this.bones.clear();
+        load(json, true);
+    }
+    /**
+     * @param createTextures false to load images without a GL context, see {@link VertexedImage#load(JSONObject, boolean)}
+     */
+    public void load(JSONObject json, boolean createTextures){
         JSONObject bones = json.getJSONObject("bones");
+        ArrayList<AnimatedSpriteBone> loadedBones = new ArrayList<>();
         for(String id : bones.keySet()){
             AnimatedSpriteBone bone = new AnimatedSpriteBone(this, null);
             bone.load(bones.getJSONObject(id));
             bone.id = UUID.fromString(id);
-            this.bones.put(bone.id, bone);
+            loadedBones.add(bone);
         }
-        this.rootBone = this.bones.get(UUID.fromString(json.getString("root")));
+        UUID root = UUID.fromString(json.getString("root"));
+        setBones(loadedBones, loadedBones.stream().filter(bone -> bone.id.equals(root)).findFirst().orElse(null));
         this.images.clear();
         for(Object im : json.getJSONArray("images")){
             VertexedImage image = new VertexedImage(null, null);
-            image.load((JSONObject) im);
+            image.load((JSONObject) im, createTextures);
             this.images.add(image);
         }
     }
+    /**
+     * Replaces all bones, parent and children ids of the bones must already be set.
+     */
+    public void setBones(List<AnimatedSpriteBone> bones, AnimatedSpriteBone root){
+        this.bones.clear();
+        this.indexedBones.clear();
+        for(AnimatedSpriteBone bone : bones){
+            bone.sprite = this;
+            addBone(bone);
+        }
+        this.rootBone = root;
+        invalidateHierarchy();
+    }
+    /**
+     * Detached copy for saving on another thread, images keep their encoded bytes but no texture.
+     */
+    public AnimatedSprite snapshot(){
+        AnimatedSprite copy = new AnimatedSprite();
+        ArrayList<AnimatedSpriteBone> copiedBones = new ArrayList<>();
+        AnimatedSpriteBone copiedRoot = null;
+        for(int index : getBoneOrder()){
+            AnimatedSpriteBone bone = indexedBones.get(index);
+            AnimatedSpriteBone copiedBone = new AnimatedSpriteBone(copy, bone.parent);
+            copiedBone.id = bone.id;
+            copiedBone.name = bone.name;
+            copiedBone.children.addAll(bone.children);
+            copiedBone.baseTransform = bone.baseTransform.cpy();
+            copiedBone.color = bone.color.cpy();
+            copiedBones.add(copiedBone);
+            if(bone == rootBone)
+                copiedRoot = copiedBone;
+        }
+        copy.setBones(copiedBones, copiedRoot);
+        for(VertexedImage image : images){
+            copy.images.add(image.snapshot());
+        }
+        return copy;
+    }
+    /**
+     * Takes over bones and images of other, which must not be used afterwards.
+     */
+    public void replaceWith(AnimatedSprite other){
+        ArrayList<AnimatedSpriteBone> otherBones = new ArrayList<>();
+        for(int index : other.getBoneOrder()){
+            otherBones.add(other.indexedBones.get(index));
+        }
+        setBones(otherBones, other.rootBone);
+        this.images.clear();
+        this.images.addAll(other.images);
+    }
     public AnimatedSpriteBone addChildNodeTo(AnimatedSpriteBone parent){
         AnimatedSpriteBone spriteBone = new AnimatedSpriteBone(this, parent.id);
         parent.children.add(spriteBone.id);
-        this.bones.put(spriteBone.id, spriteBone);
+        addBone(spriteBone);
+        invalidateHierarchy();
         return spriteBone;
     }
     public void removeNode(AnimatedSpriteBone node){
@@ -69,9 +147,171 @@ public class AnimatedSprite {
         while(!queue.isEmpty()){
             AnimatedSpriteBone bone = queue.remove(0);
             bones.remove(bone.id);
+            indexedBones.set(bone.index, null);
             for(UUID child : bone.children){
                 queue.add(bones.get(child));
             }
         }
+        invalidateHierarchy();
+    }
+    private void addBone(AnimatedSpriteBone bone){
+        bone.index = indexedBones.size();
+        indexedBones.add(bone);
+        bones.put(bone.id, bone);
+    }
+
+    /**
+     * Upper bound of {@link AnimatedSpriteBone#index}, indices of removed bones are not reused until the sprite is loaded again.
+     */
+    public int getBoneCapacity(){
+        return indexedBones.size();
+    }
+    public AnimatedSpriteBone getBone(int index){
+        return indexedBones.get(index);
+    }
+
+    private void invalidateHierarchy(){
+        hierarchyDirty = true;
+        hierarchyVersion++;
+        markModified();
+    }
+    /**
+     * Must be called after changing {@link AnimatedSpriteBone#baseTransform} of any bone.
+     */
+    public void markModified(){
+        modificationCount++;
+    }
+    /**
+     * Incremented whenever bones or their base transforms change.
+     */
+    public int getModificationCount(){
+        return modificationCount;
+    }
+    /**
+     * World transforms of all bones in bind pose, recomputed only after {@link #markModified()}.
+     * The returned buffer is shared and must not be modified.
+     */
+    public PoseBuffer getBindPose(){
+        rebuildBindPose();
+        return bindPose;
+    }
+    /**
+     * Inverse bind rotation and translation of every bone as four floats per bone index: cos, sin, x and y.
+     * Transforms a world point into the bone space of the bind pose, ignoring scale.
+     */
+    public float[] getBindInverses(){
+        rebuildBindPose();
+        return bindInverses;
+    }
+    /**
+     * Writes a row major 2x3 matrix for every bone index into out, mapping a bind pose world point into pose.
+     * World transforms of pose are written into world, out needs six floats per bone.
+     */
+    public void computeSkinningMatrices(PoseBuffer pose, PoseBuffer world, float[] out){
+        float[] inverses = getBindInverses();
+        pose.computeWorldInto(this, world);
+        for(int index : getBoneOrder()){
+            float cos = (float) Math.cos(world.rot[index]);
+            float sin = (float) Math.sin(world.rot[index]);
+            float inverseCos = inverses[index*4];
+            float inverseSin = inverses[index*4+1];
+            float inverseX = inverses[index*4+2];
+            float inverseY = inverses[index*4+3];
+            int m = index*6;
+            out[m] = cos*inverseCos - sin*inverseSin;
+            out[m+1] = -cos*inverseSin - sin*inverseCos;
+            out[m+2] = cos*inverseX - sin*inverseY + world.tx[index];
+            out[m+3] = sin*inverseCos + cos*inverseSin;
+            out[m+4] = -sin*inverseSin + cos*inverseCos;
+            out[m+5] = sin*inverseX + cos*inverseY + world.ty[index];
+        }
+    }
+    private void rebuildBindPose(){
+        if(bindPoseVersion == modificationCount)
+            return;
+        int capacity = indexedBones.size();
+        new PoseBuffer(capacity).computeWorldInto(this, bindPose);
+        if(bindInverses.length < capacity*4)
+            bindInverses = new float[capacity*4];
+        for(int index : getBoneOrder()){
+            float cos = (float) Math.cos(-bindPose.rot[index]);
+            float sin = (float) Math.sin(-bindPose.rot[index]);
+            float x = bindPose.tx[index];
+            float y = bindPose.ty[index];
+            bindInverses[index*4] = cos;
+            bindInverses[index*4+1] = sin;
+            bindInverses[index*4+2] = -(x*cos - y*sin);
+            bindInverses[index*4+3] = -(x*sin + y*cos);
+        }
+        bindPoseVersion = modificationCount;
+    }
+    /**
+     * Incremented whenever bones are added, removed or loaded.
+     */
+    public int getHierarchyVersion(){
+        return hierarchyVersion;
+    }
+    /**
+     * Bone indices in depth first order, every parent comes before its children and the descendants of a bone
+     * directly follow it. The returned array is shared and must not be modified.
+     */
+    public int[] getBoneOrder(){
+        rebuildHierarchy();
+        return boneOrder;
+    }
+    /**
+     * Parent bone index for every bone index, -1 for the root and removed bones.
+     */
+    public int[] getParentIndices(){
+        rebuildHierarchy();
+        return parentIndices;
+    }
+    public int getOrderPosition(int index){
+        rebuildHierarchy();
+        return orderPositions[index];
+    }
+    /**
+     * Position in {@link #getBoneOrder()} after the last descendant of the bone.
+     */
+    public int getSubtreeEnd(int index){
+        rebuildHierarchy();
+        return subtreeEnds[index];
+    }
+    private void rebuildHierarchy(){
+        if(!hierarchyDirty)
+            return;
+        int capacity = indexedBones.size();
+        this.boneOrder = new int[bones.size()];
+        this.orderPositions = new int[capacity];
+        this.subtreeEnds = new int[capacity];
+        this.parentIndices = new int[capacity];
+        Arrays.fill(orderPositions, -1);
+        Arrays.fill(parentIndices, -1);
+        int[] stack = new int[capacity];
+        int stackSize = 0;
+        int position = 0;
+        stack[stackSize++] = rootBone.index;
+        while(stackSize > 0){
+            int index = stack[--stackSize];
+            AnimatedSpriteBone bone = indexedBones.get(index);
+            orderPositions[index] = position;
+            boneOrder[position++] = index;
+            for(int i = bone.children.size()-1;i >= 0;i--){
+                AnimatedSpriteBone child = bones.get(bone.children.get(i));
+                parentIndices[child.index] = index;
+                stack[stackSize++] = child.index;
+            }
+        }
+        if(position != boneOrder.length)
+            this.boneOrder = Arrays.copyOf(boneOrder, position);
+        for(int i = position-1;i >= 0;i--){
+            int index = boneOrder[i];
+            int end = i+1;
+            for(UUID child : indexedBones.get(index).children){
+                end = Math.max(end, subtreeEnds[bones.get(child).index]);
+            }
+            subtreeEnds[index] = end;
+        }
+        hierarchyDirty = false;
     }
 }
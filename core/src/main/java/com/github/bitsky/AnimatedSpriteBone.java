@@ -13,6 +13,7 @@ public class AnimatedSpriteBone {
     public AnimatedSprite sprite;
     public UUID parent;
     public UUID id;
+    public int index;
     public String name;
     public ArrayList<UUID> children;
     public Transform baseTransform;
@@ -21,6 +22,7 @@ public class AnimatedSpriteBone {
         this.sprite = sprite;
         this.parent = parent;
         this.id = UUID.randomUUID();
+        this.index = -1;
         this.children = new ArrayList<>();
         this.baseTransform = new Transform(new Vector2(), 0f, 1f);
         this.name = "bone";
@@ -28,9 +30,10 @@ public class AnimatedSpriteBone {
         this.color = new Color(random.nextFloat(), random.nextFloat(), random.nextFloat(), 1f);
     }
     public void childrenRecursive(ArrayList<UUID> children){
-        for(UUID child : this.children){
-            children.add(child);
-            ISpriteMain.getInstance().sprite.bones.get(child).childrenRecursive(children);
+        int[] order = sprite.getBoneOrder();
+        int end = sprite.getSubtreeEnd(index);
+        for(int i = sprite.getOrderPosition(index)+1;i < end;i++){
+            children.add(sprite.getBone(order[i]).id);
         }
     }
     public JSONObject save(){
@@ -60,21 +60,19 @@ public class AnimatedSpritePose {
         return new AnimatedSpritePose(newTransforms);
     }
     public void drawDebugBones(AnimatedSprite sprite, ShapeRenderer shapeRenderer, Function<UUID,Color> highlighter){
-        drawDebugBone(sprite, sprite.rootBone, new Transform(new Vector2(), 0f, 1f), shapeRenderer, highlighter);
-    }
-    private void drawDebugBone(AnimatedSprite sprite, AnimatedSpriteBone bone, Transform transform, ShapeRenderer shapeRenderer, Function<UUID,Color> highlighter){
-        Transform animTransform = this.boneTransforms.get(bone.id);
-        Transform ownTransform = transform.transformChild(animTransform==null?bone.baseTransform:animTransform.patch(bone.baseTransform));
-        //if(bone.id.equals(highlight))
-        //    shapeRenderer.setColor(Color.GREEN);
-        shapeRenderer.setColor(Color.YELLOW);
-        shapeRenderer.line(transform.translation, ownTransform.translation);
-        shapeRenderer.setColor(highlighter.apply(bone.id));
-        drawArrow(shapeRenderer, ownTransform.translation, ownTransform.translation.cpy().add(new Vector2(0, ownTransform.scale*100).rotateRad(ownTransform.rotation)), ownTransform.scale*100/3);
-        //shapeRenderer.setColor(Color.WHITE);
-        for(UUID childId : bone.children){
-            AnimatedSpriteBone child = sprite.bones.get(childId);
-            drawDebugBone(sprite, child, ownTransform, shapeRenderer, highlighter);
+        Transform[] transforms = getBoneTransformArray(sprite, new Transform(new Vector2(), 0f, 1f));
+        int[] parents = sprite.getParentIndices();
+        for(int index : sprite.getBoneOrder()){
+            AnimatedSpriteBone bone = sprite.getBone(index);
+            Transform ownTransform = transforms[index];
+            Vector2 parentTranslation = parents[index] == -1 ? Vector2.Zero : transforms[parents[index]].translation;
+            //if(bone.id.equals(highlight))
+            //    shapeRenderer.setColor(Color.GREEN);
+            shapeRenderer.setColor(Color.YELLOW);
+            shapeRenderer.line(parentTranslation, ownTransform.translation);
+            shapeRenderer.setColor(highlighter.apply(bone.id));
+            drawArrow(shapeRenderer, ownTransform.translation, ownTransform.translation.cpy().add(new Vector2(0, ownTransform.scale*100).rotateRad(ownTransform.rotation)), ownTransform.scale*100/3);
+            //shapeRenderer.setColor(Color.WHITE);
         }
     }
     public static void drawArrow(ShapeRenderer shapeRenderer, Vector2 from, Vector2 to, float size){
@@ -86,16 +84,21 @@ public class AnimatedSpritePose {
     }
     public HashMap<UUID,Transform> getBoneTransforms(AnimatedSprite sprite, Transform transform){
         HashMap<UUID,Transform> transforms = new HashMap<>();
-        getBonePositionsRecurse(sprite, transforms, sprite.rootBone, transform);
+        Transform[] transformArray = getBoneTransformArray(sprite, transform);
+        for(int index : sprite.getBoneOrder()){
+            transforms.put(sprite.getBone(index).id, transformArray[index]);
+        }
         return transforms;
     }
-    private void getBonePositionsRecurse(AnimatedSprite sprite, HashMap<UUID,Transform> transforms, AnimatedSpriteBone bone, Transform transform){
-        Transform animTransform = this.boneTransforms.get(bone.id);
-        Transform ownTransform = transform.transformChild(animTransform==null?bone.baseTransform:animTransform.patch(bone.baseTransform));
-        transforms.put(bone.id, ownTransform);
-        for(UUID childId : bone.children){
-            AnimatedSpriteBone child = sprite.bones.get(childId);
-            getBonePositionsRecurse(sprite, transforms, child, ownTransform);
+    private Transform[] getBoneTransformArray(AnimatedSprite sprite, Transform transform){
+        Transform[] transforms = new Transform[sprite.getBoneCapacity()];
+        int[] parents = sprite.getParentIndices();
+        for(int index : sprite.getBoneOrder()){
+            AnimatedSpriteBone bone = sprite.getBone(index);
+            Transform animTransform = this.boneTransforms.get(bone.id);
+            Transform parentTransform = parents[index] == -1 ? transform : transforms[parents[index]];
+            transforms[index] = parentTransform.transformChild(animTransform==null?bone.baseTransform:animTransform.patch(bone.baseTransform));
         }
+        return transforms;
     }
 }
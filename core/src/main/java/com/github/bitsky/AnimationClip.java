@@ -0,0 +1,12 @@
+package com.github.bitsky;
+
+/**
+ * Anything that can be sampled into a pose, keyframed {@link SpriteAnimation}s as well as baked and compressed clips.
+ */
+public interface AnimationClip {
+    /**
+     * Writes the channels animated at time into out, all other channels are cleared.
+     */
+    void getPose(float time, AnimatedSprite sprite, PoseBuffer out);
+    float getAnimationLength();
+}
@@ -7,13 +7,13 @@ import org.json.JSONObject;
 import java.util.*;
 
 public class AnimationTrack {
-    public PropertyTrack<Vector2> translations;
-    public PropertyTrack<Float> rotations;
-    public PropertyTrack<Float> scales;
+    public Vector2Track translations;
+    public FloatTrack rotations;
+    public FloatTrack scales;
     public AnimationTrack() {
-        this.translations = new PropertyTrack<>((first, second, t) -> first.cpy().lerp(second, t));
-        this.rotations = new PropertyTrack<>(MathUtils::lerp);
-        this.scales = new PropertyTrack<>(MathUtils::lerp);
+        this.translations = new Vector2Track();
+        this.rotations = new FloatTrack();
+        this.scales = new FloatTrack();
     }
     public JSONObject save(){
         JSONObject tracks = new JSONObject();
@@ -53,6 +53,14 @@ public class AnimationTrack {
     public Transform getTransformAtTime(float time){
         return new Transform(translations.getValueAtTime(time), rotations.getValueAtTime(time), scales.getValueAtTime(time));
     }
+    public void sampleInto(float time, PoseBuffer out, int bone){
+        if(translations.getKeyframeCount() > 0)
+            translations.sampleInto(time, out, bone);
+        if(rotations.getKeyframeCount() > 0)
+            out.setRotation(bone, rotations.sample(time));
+        if(scales.getKeyframeCount() > 0)
+            out.setScale(bone, scales.sample(time));
+    }
     public void load(JSONObject track) {
         translations.track.clear();
         rotations.track.clear();
@@ -88,54 +96,252 @@ public class AnimationTrack {
         }
     }
     public static class PropertyTrack<T>{
-        public final HashMap<Float, ValueInterpolationPair<T>> track;
+        public final Map<Float, ValueInterpolationPair<T>> track;
         private EasingFunction<T> easingFunction;
+        private float[] times;
+        private Object[] keyframes;
+        private int size;
         public PropertyTrack(EasingFunction<T> easingFunction) {
-            this.track = new HashMap<>();
+            this.track = new KeyframeMap();
             this.easingFunction = easingFunction;
+            this.times = new float[4];
+            this.keyframes = new Object[4];
+            this.size = 0;
         }
         public void addKeyframe(float time, T value, EInterpolationFunction interpolationFunction){
-            track.put(time, new ValueInterpolationPair<>(value, interpolationFunction));
+            putKeyframe(time, new ValueInterpolationPair<>(value, interpolationFunction));
         }
 
-        public HashMap<Float, ValueInterpolationPair<T>> getTrack() {
+        public Map<Float, ValueInterpolationPair<T>> getTrack() {
             return track;
         }
 
         public void modifyKeyframe(float time, float toTime){
-            ValueInterpolationPair<T> v = this.track.get(time);
-            if(v == null)
+            int index = indexOf(time);
+            if(index < 0)
                 return;
-            track.remove(time);
-            track.put(toTime, v);
+            ValueInterpolationPair<T> v = getKeyframe(index);
+            removeKeyframeAt(index);
+            putKeyframe(toTime, v);
+        }
+
+        public int getKeyframeCount(){
+            return size;
+        }
+        public float getKeyframeTime(int index){
+            return times[index];
+        }
+        @SuppressWarnings("unchecked")
+        public ValueInterpolationPair<T> getKeyframe(int index){
+            return (ValueInterpolationPair<T>) keyframes[index];
+        }
+        public float getEndTime(){
+            return size == 0 ? 0 : times[size-1];
         }
 
         public T getValueAtTime(float time){
-            ArrayList<Map.Entry<Float, ValueInterpolationPair<T>>> list = new ArrayList<>(track.entrySet());
-            list.sort(Map.Entry.comparingByKey());
-            if(list.isEmpty())
+            int index = findKeyframe(time);
+            if(index < 0)
                 return null;
-            if(time <= list.get(0).getKey())
-                return list.get(0).getValue().value;
-            if(time >= list.get(list.size()-1).getKey())
-                return list.get(list.size()-1).getValue().value;
+            ValueInterpolationPair<T> next = getKeyframe(index);
+            if(index == 0 || time >= times[index])
+                return next.value;
+            return easingFunction.getEased(getKeyframe(index-1).value, next.value, getEasedAlpha(index, time));
+        }
+
+        /**
+         * Index of the keyframe to blend towards at time, clamped to the first and last keyframe, -1 for an empty track.
+         */
+        public int findKeyframe(float time){
+            if(size == 0)
+                return -1;
+            if(time <= times[0])
+                return 0;
+            if(time >= times[size-1])
+                return size-1;
+            return findSegment(time);
+        }
 
-            float previousTime = list.get(0).getKey();
-            T previousValue = list.get(0).getValue().value;
-            for(int i = 1;i < list.size();i++){
-                Map.Entry<Float, ValueInterpolationPair<T>> entry = list.get(i);
-                if(entry.getKey() >= time){
-                    float lerpValue = (time-previousTime)/(entry.getKey()-previousTime);
-                    return easingFunction.getEased(previousValue, entry.getValue().value, entry.getValue().interpolationFunction.function.apply(lerpValue));
-                }
-                previousTime = entry.getKey();
-                previousValue = entry.getValue().value;
-            }
-            throw new IllegalStateException("unreachable");
+        /**
+         * Eased blend factor from keyframe index-1 to keyframe index returned by {@link #findKeyframe(float)}.
+         */
+        public float getEasedAlpha(int index, float time){
+            if(index == 0 || time >= times[index])
+                return 1;
+            float previousTime = times[index-1];
+            float lerpValue = (time-previousTime)/(times[index]-previousTime);
+            return getKeyframe(index).interpolationFunction.apply(lerpValue);
+        }
+
+        /**
+         * Finds index of first keyframe at or after time, time must lie strictly inside the track.
+         * Tracks are shared by every instance and thread sampling them, so the search keeps no state.
+         */
+        private int findSegment(float time){
+            int index = Arrays.binarySearch(times, 0, size, time);
+            return index < 0 ? -(index+1) : index;
+        }
+        private int indexOf(float time){
+            return Arrays.binarySearch(times, 0, size, time);
+        }
+        private ValueInterpolationPair<T> putKeyframe(float time, ValueInterpolationPair<T> keyframe){
+            int index = indexOf(time);
+            if(index >= 0){
+                ValueInterpolationPair<T> previous = getKeyframe(index);
+                keyframes[index] = keyframe;
+                return previous;
+            }
+            index = -(index+1);
+            if(size == times.length){
+                times = Arrays.copyOf(times, size*2);
+                keyframes = Arrays.copyOf(keyframes, size*2);
+            }
+            System.arraycopy(times, index, times, index+1, size-index);
+            System.arraycopy(keyframes, index, keyframes, index+1, size-index);
+            times[index] = time;
+            keyframes[index] = keyframe;
+            size++;
+            return null;
+        }
+        private void removeKeyframeAt(int index){
+            System.arraycopy(times, index+1, times, index, size-index-1);
+            System.arraycopy(keyframes, index+1, keyframes, index, size-index-1);
+            size--;
+            keyframes[size] = null;
         }
         @FunctionalInterface
         public interface EasingFunction<T>{
             T getEased(T first, T second, float t);
         }
+
+        /**
+         * Map view over the sorted keyframe arrays, iterates in time order.
+         */
+        private class KeyframeMap extends AbstractMap<Float, ValueInterpolationPair<T>>{
+            @Override
+            public int size() {
+                return size;
+            }
+            @Override
+            public boolean containsKey(Object key) {
+                return key instanceof Float && indexOf((Float) key) >= 0;
+            }
+            @Override
+            public ValueInterpolationPair<T> get(Object key) {
+                if(!(key instanceof Float))
+                    return null;
+                int index = indexOf((Float) key);
+                return index < 0 ? null : getKeyframe(index);
+            }
+            @Override
+            public ValueInterpolationPair<T> put(Float key, ValueInterpolationPair<T> value) {
+                return putKeyframe(key, value);
+            }
+            @Override
+            public ValueInterpolationPair<T> remove(Object key) {
+                if(!(key instanceof Float))
+                    return null;
+                int index = indexOf((Float) key);
+                if(index < 0)
+                    return null;
+                ValueInterpolationPair<T> previous = getKeyframe(index);
+                removeKeyframeAt(index);
+                return previous;
+            }
+            @Override
+            public void clear() {
+                Arrays.fill(keyframes, 0, size, null);
+                size = 0;
+            }
+            @Override
+            public Set<Entry<Float, ValueInterpolationPair<T>>> entrySet() {
+                return new AbstractSet<>() {
+                    @Override
+                    public Iterator<Entry<Float, ValueInterpolationPair<T>>> iterator() {
+                        return new Iterator<>() {
+                            private int next = 0;
+                            private boolean removable = false;
+                            @Override
+                            public boolean hasNext() {
+                                return next < size;
+                            }
+                            @Override
+                            public Entry<Float, ValueInterpolationPair<T>> next() {
+                                if(next >= size)
+                                    throw new NoSuchElementException();
+                                removable = true;
+                                next++;
+                                return new SimpleImmutableEntry<>(times[next-1], getKeyframe(next-1));
+                            }
+                            @Override
+                            public void remove() {
+                                if(!removable)
+                                    throw new IllegalStateException();
+                                removable = false;
+                                next--;
+                                removeKeyframeAt(next);
+                            }
+                        };
+                    }
+                    @Override
+                    public int size() {
+                        return size;
+                    }
+                };
+            }
+        }
+    }
+    /**
+     * Track of plain floats sampled without boxing.
+     */
+    public static class FloatTrack extends PropertyTrack<Float>{
+        public FloatTrack() {
+            super(MathUtils::lerp);
+        }
+        /**
+         * @return value at time, the track must not be empty
+         */
+        public float sample(float time){
+            int index = findKeyframe(time);
+            float next = getKeyframe(index).value;
+            float alpha = getEasedAlpha(index, time);
+            if(alpha == 1)
+                return next;
+            return MathUtils.lerp(getKeyframe(index-1).value, next, alpha);
+        }
+    }
+    /**
+     * Track of points sampled into caller provided output.
+     */
+    public static class Vector2Track extends PropertyTrack<Vector2>{
+        public Vector2Track() {
+            super((first, second, t) -> first.cpy().lerp(second, t));
+        }
+        /**
+         * Stores the value at time in out, the track must not be empty.
+         */
+        public Vector2 sample(float time, Vector2 out){
+            int index = findKeyframe(time);
+            Vector2 next = getKeyframe(index).value;
+            float alpha = getEasedAlpha(index, time);
+            if(alpha == 1)
+                return out.set(next);
+            Vector2 previous = getKeyframe(index-1).value;
+            return out.set(previous.x + (next.x-previous.x)*alpha, previous.y + (next.y-previous.y)*alpha);
+        }
+        /**
+         * Same as {@link #sample(float, Vector2)} writing the translation of bone.
+         */
+        public void sampleInto(float time, PoseBuffer out, int bone){
+            int index = findKeyframe(time);
+            Vector2 next = getKeyframe(index).value;
+            float alpha = getEasedAlpha(index, time);
+            if(alpha == 1){
+                out.setTranslation(bone, next.x, next.y);
+            } else {
+                Vector2 previous = getKeyframe(index-1).value;
+                out.setTranslation(bone, previous.x + (next.x-previous.x)*alpha, previous.y + (next.y-previous.y)*alpha);
+            }
+        }
     }
 }
@@ -0,0 +1,220 @@
+package com.github.bitsky;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * {@link SpriteAnimation} resampled at fixed rates, sampling is an index computation and one lerp per channel.
+ * Every channel uses the lowest rate, halving from the bake rate, whose linear reconstruction stays within the tolerance.
+ */
+public class BakedClip implements AnimationClip {
+    public final HashMap<UUID, BakedTrack> boneTracks;
+    public float length;
+    public BakedClip() {
+        this.boneTracks = new HashMap<>();
+    }
+
+    /**
+     * @param sampleRate highest samples per second of any channel
+     * @param tolerance largest allowed difference to the animation at the bake rate, in units of the channel
+     */
+    public static BakedClip bake(SpriteAnimation animation, float sampleRate, float tolerance){
+        BakedClip clip = new BakedClip();
+        clip.length = animation.getAnimationLength();
+        int count = (int) Math.ceil(clip.length*sampleRate)+1;
+        float[] translationX = new float[count];
+        float[] translationY = new float[count];
+        float[] rotations = new float[count];
+        float[] scales = new float[count];
+        PoseBuffer pose = new PoseBuffer(1);
+        for(Map.Entry<UUID, AnimationTrack> entry : animation.boneTracks.entrySet()){
+            AnimationTrack track = entry.getValue();
+            for(int i = 0;i < count;i++){
+                pose.clear();
+                track.sampleInto(i/sampleRate, pose, 0);
+                translationX[i] = pose.tx[0];
+                translationY[i] = pose.ty[0];
+                rotations[i] = pose.rot[0];
+                scales[i] = pose.scale[0];
+            }
+            BakedTrack baked = new BakedTrack();
+            if(track.translations.getKeyframeCount() > 0){
+                baked.translationX = Channel.fit(translationX, sampleRate, tolerance);
+                baked.translationY = Channel.fit(translationY, sampleRate, tolerance);
+            }
+            if(track.rotations.getKeyframeCount() > 0)
+                baked.rotation = Channel.fit(rotations, sampleRate, tolerance);
+            if(track.scales.getKeyframeCount() > 0)
+                baked.scale = Channel.fit(scales, sampleRate, tolerance);
+            clip.boneTracks.put(entry.getKey(), baked);
+        }
+        return clip;
+    }
+
+    /**
+     * Stores a baked clip next to the animation of every Animated Pose node in graph, the editor drops them again when saving.
+     * @param stripKeyframes removes the animations for a copy only the runtime loads, the editor cannot open it
+     */
+    public static void bakeGraph(JSONObject graph, float sampleRate, float tolerance, boolean stripKeyframes){
+        JSONObject nodes = graph.getJSONObject("nodes");
+        for(String id : nodes.keySet()){
+            JSONObject node = nodes.getJSONObject(id);
+            if(!node.getString("type").equals("Animated Pose"))
+                continue;
+            SpriteAnimation animation = new SpriteAnimation();
+            animation.load(node.getJSONObject("animation"));
+            node.put("baked", bake(animation, sampleRate, tolerance).save());
+            if(stripKeyframes)
+                node.remove("animation");
+        }
+    }
+
+    /**
+     * Same as {@link SpriteAnimation#getPose(float, AnimatedSprite, PoseBuffer)}.
+     */
+    @Override
+    public void getPose(float time, AnimatedSprite sprite, PoseBuffer out){
+        out.ensureCapacity(sprite.getBoneCapacity());
+        out.clear();
+        for(Map.Entry<UUID, BakedTrack> entry : boneTracks.entrySet()){
+            AnimatedSpriteBone bone = sprite.bones.get(entry.getKey());
+            if(bone != null)
+                entry.getValue().sampleInto(time, out, bone.index);
+        }
+    }
+    @Override
+    public float getAnimationLength(){
+        return length;
+    }
+
+    public JSONObject save(){
+        JSONObject json = new JSONObject();
+        json.put("length", length);
+        JSONObject tracks = new JSONObject();
+        for(Map.Entry<UUID, BakedTrack> entry : boneTracks.entrySet()){
+            tracks.put(entry.getKey().toString(), entry.getValue().save());
+        }
+        json.put("tracks", tracks);
+        return json;
+    }
+    public void load(JSONObject json){
+        this.length = json.getFloat("length");
+        this.boneTracks.clear();
+        JSONObject tracks = json.getJSONObject("tracks");
+        for(String id : tracks.keySet()){
+            BakedTrack track = new BakedTrack();
+            track.load(tracks.getJSONObject(id));
+            boneTracks.put(UUID.fromString(id), track);
+        }
+    }
+
+    public static class BakedTrack{
+        public Channel translationX;
+        public Channel translationY;
+        public Channel rotation;
+        public Channel scale;
+        public void sampleInto(float time, PoseBuffer out, int bone){
+            if(translationX != null)
+                out.setTranslation(bone, translationX.sample(time), translationY.sample(time));
+            if(rotation != null)
+                out.setRotation(bone, rotation.sample(time));
+            if(scale != null)
+                out.setScale(bone, scale.sample(time));
+        }
+        public JSONObject save(){
+            JSONObject json = new JSONObject();
+            if(translationX != null){
+                json.put("translationX", translationX.save());
+                json.put("translationY", translationY.save());
+            }
+            if(rotation != null)
+                json.put("rotation", rotation.save());
+            if(scale != null)
+                json.put("scale", scale.save());
+            return json;
+        }
+        public void load(JSONObject json){
+            this.translationX = json.has("translationX") ? Channel.load(json.getJSONObject("translationX")) : null;
+            this.translationY = json.has("translationY") ? Channel.load(json.getJSONObject("translationY")) : null;
+            this.rotation = json.has("rotation") ? Channel.load(json.getJSONObject("rotation")) : null;
+            this.scale = json.has("scale") ? Channel.load(json.getJSONObject("scale")) : null;
+        }
+    }
+    public static class Channel{
+        public final float sampleRate;
+        public final float[] samples;
+        public Channel(float sampleRate, float[] samples) {
+            this.sampleRate = sampleRate;
+            this.samples = samples;
+        }
+        public float sample(float time){
+            float position = time*sampleRate;
+            if(!(position > 0))
+                return samples[0];
+            int last = samples.length-1;
+            if(position >= last)
+                return samples[last];
+            int index = (int) position;
+            float alpha = position-index;
+            return samples[index] + (samples[index+1]-samples[index])*alpha;
+        }
+        /**
+         * Drops every second sample while the result still reconstructs all of samples within tolerance,
+         * samples past the end repeat the last one like keyframe tracks do.
+         */
+        public static Channel fit(float[] samples, float sampleRate, float tolerance){
+            int last = samples.length-1;
+            boolean constant = true;
+            for(float sample : samples){
+                constant &= Math.abs(sample-samples[0]) <= tolerance;
+            }
+            if(constant)
+                return new Channel(sampleRate, new float[]{samples[0]});
+            int stride = 1;
+            while(stride < last && fits(samples, stride*2, tolerance)){
+                stride *= 2;
+            }
+            int count = (last+stride-1)/stride+1;
+            float[] reduced = new float[count];
+            for(int i = 0;i < count;i++){
+                reduced[i] = samples[Math.min(i*stride, last)];
+            }
+            return new Channel(sampleRate/stride, reduced);
+        }
+        private static boolean fits(float[] samples, int stride, float tolerance){
+            int last = samples.length-1;
+            for(int i = 0;i < last;i += stride){
+                float start = samples[i];
+                float end = samples[Math.min(i+stride, last)];
+                for(int j = i+1;j < i+stride;j++){
+                    float expected = start + (end-start)*(j-i)/stride;
+                    if(Math.abs(expected-samples[Math.min(j, last)]) > tolerance)
+                        return false;
+                }
+            }
+            return true;
+        }
+        public JSONObject save(){
+            JSONObject json = new JSONObject();
+            json.put("rate", sampleRate);
+            JSONArray values = new JSONArray();
+            for(float sample : samples){
+                values.put(sample);
+            }
+            json.put("samples", values);
+            return json;
+        }
+        public static Channel load(JSONObject json){
+            JSONArray values = json.getJSONArray("samples");
+            float[] samples = new float[values.length()];
+            for(int i = 0;i < samples.length;i++){
+                samples[i] = values.getFloat(i);
+            }
+            return new Channel(json.getFloat("rate"), samples);
+        }
+    }
+}
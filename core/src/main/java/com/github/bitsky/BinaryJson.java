@@ -0,0 +1,223 @@
+package com.github.bitsky;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONString;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.UUID;
+
+/**
+ * Compact tagged encoding of json trees. Keys and strings are written once into a string table and referenced by index,
+ * uuid strings are stored as 16 raw bytes and floats keep their 4 byte size. {@link Bytes} values are stored as raw bytes,
+ * in json text they are written as base64 strings.
+ */
+public class BinaryJson {
+    private static final byte NULL = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+    private static final byte INT = 3;
+    private static final byte LONG = 4;
+    private static final byte FLOAT = 5;
+    private static final byte DOUBLE = 6;
+    private static final byte STRING = 7;
+    private static final byte UUID_STRING = 8;
+    private static final byte OBJECT = 9;
+    private static final byte ARRAY = 10;
+    private static final byte BYTES = 11;
+
+    public static byte[] encode(JSONObject json){
+        HashMap<String, Integer> strings = new HashMap<>();
+        ArrayList<String> table = new ArrayList<>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try {
+            writeValue(new DataOutputStream(body), json, strings, table);
+            DataOutputStream out = new DataOutputStream(result);
+            writeVarInt(out, table.size());
+            for(String string : table){
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(out, bytes.length);
+                out.write(bytes);
+            }
+            body.writeTo(out);
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return result.toByteArray();
+    }
+    public static JSONObject decode(ByteBuffer in){
+        String[] table = new String[readVarInt(in)];
+        for(int i = 0;i < table.length;i++){
+            byte[] bytes = new byte[readVarInt(in)];
+            in.get(bytes);
+            table[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return (JSONObject) readValue(in, table);
+    }
+
+    private static void writeValue(DataOutputStream out, Object value, HashMap<String, Integer> strings, ArrayList<String> table) throws IOException {
+        if(value == null || value == JSONObject.NULL){
+            out.writeByte(NULL);
+        } else if(value instanceof Boolean){
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if(value instanceof Integer || value instanceof Short || value instanceof Byte){
+            out.writeByte(INT);
+            out.writeInt(((Number) value).intValue());
+        } else if(value instanceof Long){
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if(value instanceof Float){
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if(value instanceof Number){
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if(value instanceof Bytes){
+            byte[] bytes = ((Bytes) value).bytes;
+            out.writeByte(BYTES);
+            writeVarInt(out, bytes.length);
+            out.write(bytes);
+        } else if(value instanceof JSONObject){
+            JSONObject object = (JSONObject) value;
+            out.writeByte(OBJECT);
+            writeVarInt(out, object.length());
+            for(String key : object.keySet()){
+                writeString(out, key, strings, table);
+                writeValue(out, object.opt(key), strings, table);
+            }
+        } else if(value instanceof JSONArray){
+            JSONArray array = (JSONArray) value;
+            out.writeByte(ARRAY);
+            writeVarInt(out, array.length());
+            for(int i = 0;i < array.length();i++){
+                writeValue(out, array.opt(i), strings, table);
+            }
+        } else {
+            writeString(out, value.toString(), strings, table);
+        }
+    }
+    private static void writeString(DataOutputStream out, String string, HashMap<String, Integer> strings, ArrayList<String> table) throws IOException {
+        UUID uuid = parseUUID(string);
+        if(uuid != null){
+            out.writeByte(UUID_STRING);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+            return;
+        }
+        Integer index = strings.get(string);
+        if(index == null){
+            index = table.size();
+            strings.put(string, index);
+            table.add(string);
+        }
+        out.writeByte(STRING);
+        writeVarInt(out, index);
+    }
+    private static Object readValue(ByteBuffer in, String[] table){
+        byte tag = in.get();
+        switch(tag){
+            case NULL:
+                return JSONObject.NULL;
+            case FALSE:
+                return false;
+            case TRUE:
+                return true;
+            case INT:
+                return in.getInt();
+            case LONG:
+                return in.getLong();
+            case FLOAT:
+                return in.getFloat();
+            case DOUBLE:
+                return in.getDouble();
+            case STRING:
+                return table[readVarInt(in)];
+            case UUID_STRING:
+                return new UUID(in.getLong(), in.getLong()).toString();
+            case BYTES: {
+                byte[] bytes = new byte[readVarInt(in)];
+                in.get(bytes);
+                return new Bytes(bytes);
+            }
+            case OBJECT: {
+                int length = readVarInt(in);
+                JSONObject object = new JSONObject();
+                for(int i = 0;i < length;i++){
+                    String key = (String) readValue(in, table);
+                    object.put(key, readValue(in, table));
+                }
+                return object;
+            }
+            case ARRAY: {
+                int length = readVarInt(in);
+                JSONArray array = new JSONArray();
+                for(int i = 0;i < length;i++){
+                    array.put(readValue(in, table));
+                }
+                return array;
+            }
+            default:
+                throw new IllegalStateException("unknown value tag " + tag);
+        }
+    }
+    /**
+     * @return bytes of a {@link Bytes} value or of a base64 string, as read from json text
+     */
+    public static byte[] getBytes(JSONObject json, String key){
+        Object value = json.get(key);
+        if(value instanceof Bytes)
+            return ((Bytes) value).bytes;
+        return Base64.getDecoder().decode(value.toString());
+    }
+    private static UUID parseUUID(String string){
+        if(string.length() != 36 || string.charAt(8) != '-')
+            return null;
+        try {
+            UUID uuid = UUID.fromString(string);
+            return uuid.toString().equals(string) ? uuid : null;
+        } catch (IllegalArgumentException e){
+            return null;
+        }
+    }
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while((value & ~0x7F) != 0){
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+    private static int readVarInt(ByteBuffer in){
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Binary json value, see {@link #getBytes}.
+     */
+    public static class Bytes implements JSONString {
+        public final byte[] bytes;
+        public Bytes(byte[] bytes) {
+            this.bytes = bytes;
+        }
+        @Override
+        public String toJSONString() {
+            return '"' + Base64.getEncoder().encodeToString(bytes) + '"';
+        }
+    }
+}
@@ -4,7 +4,6 @@ import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Input;
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.Color;
-import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.math.Vector3;
@@ -128,7 +127,9 @@ public class BoneEditor extends Editor {
                 @Override
                 public void onFilesChosen(Array<FileHandle> files) {
                     for(FileHandle fileHandle : files) {
-                        sprite.images.add(new VertexedImage(new Texture(fileHandle), fileHandle.name()));
+                        VertexedImage image = new VertexedImage(null, fileHandle.name());
+                        image.setEncodedTexture(fileHandle.readBytes(), true);
+                        sprite.images.add(image);
                         refreshImages();
                         imageList.setSelectedIndex(imageList.getItems().size - 1);
                     }
@@ -240,16 +241,19 @@ public class BoneEditor extends Editor {
                     continue;
                 if(!tree.getSelection().isEmpty()){
                     vertex.addWeight(tree.getSelection().getLastSelected().getValue().id, speed/tree.getSelection().size());
+                    selectedImage.invalidateSkinning();
                 }
             }
         }
         if(Gdx.input.isKeyPressed(Input.Keys.H) && selectedImage != null){
             Matrix4 matrix = selectedImage.getTransformMatrix();
-            selectedImage.points.removeIf(vertex -> {
+            boolean removed = selectedImage.points.removeIf(vertex -> {
                 Vector3 pos = new Vector3(vertex.position.x, vertex.position.y, 0);
                 pos.prj(matrix);
                 return pos.dst(worldMouse3) < 10f;
             });
+            if(removed)
+                selectedImage.invalidateMesh();
         }
         if(Gdx.input.isKeyPressed(Input.Keys.N) && selectedImage != null){
             selectedImage.transform.translation.add(ISpriteMain.getMouseDeltaX(), -ISpriteMain.getMouseDeltaY());
@@ -261,6 +265,7 @@ public class BoneEditor extends Editor {
             if(movingBone != null && movingBone.parent != null) {
                 Transform parentTransform = transforms.get(movingBone.parent);
                 movingBone.baseTransform.translation.set(worldMouse.cpy().sub(parentTransform.translation).rotateRad(-parentTransform.rotation));
+                sprite.markModified();
             }
         }
 
@@ -311,6 +316,7 @@ public class BoneEditor extends Editor {
             AnimatedSpriteBone movingBone = sprite.bones.get(movingId);
             if(movingBone != null && movingBone.parent != null) {
                 movingBone.baseTransform.rotation -= v1/10f;
+                sprite.markModified();
             }
             return true;
         }
@@ -0,0 +1,8 @@
+package com.github.bitsky;
+
+/**
+ * Expression generated by {@link ExpressionCompiler}, values holds the variables in the slot order of the compilation.
+ */
+public interface CompiledExpression {
+    float evaluate(float[] values);
+}
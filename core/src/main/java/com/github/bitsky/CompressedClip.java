@@ -0,0 +1,316 @@
+package com.github.bitsky;
+
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * {@link BakedClip} with redundant samples removed and the remaining keys quantized to 16 bits, all channels packed into one array.
+ * Channel c of bone b is channel b*4+c, for every key it stores the sample index followed by the value scaled
+ * into the range of the channel. Channels whose range is too wide to quantize within the tolerance store their values
+ * as raw floats in two shorts instead, marked by a range of {@link #RAW}. Sampling decodes the packed keys directly.
+ */
+public class CompressedClip implements AnimationClip {
+    public static final int TRANSLATION_X = 0;
+    public static final int TRANSLATION_Y = 1;
+    public static final int ROTATION = 2;
+    public static final int SCALE = 3;
+    private static final int CHANNELS = 4;
+    private static final int MAX_KEY = 0xFFFF;
+    private static final float RAW = -1;
+
+    public float length;
+    public UUID[] bones;
+    /**
+     * Start of every channel in {@link #data}, -1 for channels that are not animated.
+     */
+    private int[] offsets;
+    private int[] keyCounts;
+    private float[] sampleRates;
+    private float[] minimums;
+    private float[] ranges;
+    /**
+     * Key indices followed by key values of every channel, both unsigned.
+     */
+    private short[] data;
+
+    private CompressedClip() {}
+
+    /**
+     * @param tolerance largest allowed difference to clip at its samples, including the quantization error
+     */
+    public static CompressedClip compress(BakedClip clip, float tolerance){
+        return compress(clip, tolerance, null);
+    }
+    public static CompressedClip compress(BakedClip clip, float tolerance, Report report){
+        CompressedClip compressed = new CompressedClip();
+        compressed.length = clip.length;
+        compressed.bones = clip.boneTracks.keySet().toArray(new UUID[0]);
+        int channelCount = compressed.bones.length*CHANNELS;
+        compressed.offsets = new int[channelCount];
+        compressed.keyCounts = new int[channelCount];
+        compressed.sampleRates = new float[channelCount];
+        compressed.minimums = new float[channelCount];
+        compressed.ranges = new float[channelCount];
+        short[] data = new short[64];
+        int size = 0;
+        for(int channel = 0;channel < channelCount;channel++){
+            BakedClip.Channel source = getChannel(clip.boneTracks.get(compressed.bones[channel/CHANNELS]), channel%CHANNELS);
+            if(source == null){
+                compressed.offsets[channel] = -1;
+                continue;
+            }
+            float[] samples = source.samples;
+            if(samples.length > MAX_KEY+1)
+                throw new IllegalArgumentException("Channel has more than " + (MAX_KEY+1) + " samples");
+            float minimum = Float.POSITIVE_INFINITY, maximum = Float.NEGATIVE_INFINITY;
+            for(float sample : samples){
+                minimum = Math.min(minimum, sample);
+                maximum = Math.max(maximum, sample);
+            }
+            float range = maximum-minimum;
+            //half a quantization step is lost when rounding, the rest of the tolerance is left for removing keys
+            float quantizationError = range/MAX_KEY/2;
+            boolean raw = quantizationError >= tolerance;
+            int[] keys = reduce(samples, raw ? tolerance : tolerance-quantizationError);
+            int length = keys.length*(raw ? 3 : 2);
+            if(size+length > data.length)
+                data = Arrays.copyOf(data, Math.max(data.length*2, size+length));
+            compressed.offsets[channel] = size;
+            compressed.keyCounts[channel] = keys.length;
+            compressed.sampleRates[channel] = source.sampleRate;
+            compressed.minimums[channel] = raw ? 0 : minimum;
+            compressed.ranges[channel] = raw ? RAW : range;
+            for(int i = 0;i < keys.length;i++){
+                data[size+i] = (short) keys[i];
+                if(raw){
+                    int bits = Float.floatToIntBits(samples[keys[i]]);
+                    data[size+keys.length+i*2] = (short) (bits >>> 16);
+                    data[size+keys.length+i*2+1] = (short) bits;
+                } else {
+                    data[size+keys.length+i] = (short) (range == 0 ? 0 : Math.round((samples[keys[i]]-minimum)/range*MAX_KEY));
+                }
+            }
+            size += length;
+        }
+        compressed.data = Arrays.copyOf(data, size);
+        if(report != null)
+            report.add(clip, compressed);
+        return compressed;
+    }
+    /**
+     * Keeps the first and last sample and greedily extends every segment as long as its line stays within tolerance of all samples it skips.
+     */
+    private static int[] reduce(float[] samples, float tolerance){
+        int[] keys = new int[samples.length];
+        int count = 0;
+        int start = 0;
+        keys[count++] = 0;
+        while(start < samples.length-1){
+            int end = start+1;
+            while(end+1 < samples.length && fits(samples, start, end+1, tolerance)){
+                end++;
+            }
+            keys[count++] = end;
+            start = end;
+        }
+        return Arrays.copyOf(keys, count);
+    }
+    private static boolean fits(float[] samples, int start, int end, float tolerance){
+        float from = samples[start];
+        float to = samples[end];
+        for(int i = start+1;i < end;i++){
+            float expected = from + (to-from)*(i-start)/(end-start);
+            if(Math.abs(expected-samples[i]) > tolerance)
+                return false;
+        }
+        return true;
+    }
+    private static BakedClip.Channel getChannel(BakedClip.BakedTrack track, int channel){
+        switch(channel){
+            case TRANSLATION_X:
+                return track.translationX;
+            case TRANSLATION_Y:
+                return track.translationY;
+            case ROTATION:
+                return track.rotation;
+            default:
+                return track.scale;
+        }
+    }
+
+    /**
+     * @return value of channel at time, NaN if the channel is not animated
+     */
+    public float sample(int channel, float time){
+        int offset = offsets[channel];
+        if(offset == -1)
+            return Float.NaN;
+        int count = keyCounts[channel];
+        float position = time*sampleRates[channel];
+        int last = data[offset+count-1] & 0xFFFF;
+        if(!(position > 0))
+            return decode(channel, 0);
+        if(position >= last)
+            return decode(channel, count-1);
+        int low = 0, high = count-1;
+        while(high-low > 1){
+            int middle = (low+high) >>> 1;
+            if((data[offset+middle] & 0xFFFF) <= position)
+                low = middle;
+            else
+                high = middle;
+        }
+        int from = data[offset+low] & 0xFFFF;
+        int to = data[offset+high] & 0xFFFF;
+        float start = decode(channel, low);
+        return start + (decode(channel, high)-start)*(position-from)/(to-from);
+    }
+    private float decode(int channel, int key){
+        int values = offsets[channel]+keyCounts[channel];
+        if(ranges[channel] == RAW)
+            return Float.intBitsToFloat(((data[values+key*2] & 0xFFFF) << 16) | (data[values+key*2+1] & 0xFFFF));
+        return minimums[channel] + (data[values+key] & 0xFFFF)*ranges[channel]/MAX_KEY;
+    }
+    @Override
+    public void getPose(float time, AnimatedSprite sprite, PoseBuffer out){
+        out.ensureCapacity(sprite.getBoneCapacity());
+        out.clear();
+        for(int i = 0;i < bones.length;i++){
+            AnimatedSpriteBone bone = sprite.bones.get(bones[i]);
+            if(bone == null)
+                continue;
+            int channel = i*CHANNELS;
+            if(offsets[channel+TRANSLATION_X] != -1)
+                out.setTranslation(bone.index, sample(channel+TRANSLATION_X, time), sample(channel+TRANSLATION_Y, time));
+            if(offsets[channel+ROTATION] != -1)
+                out.setRotation(bone.index, sample(channel+ROTATION, time));
+            if(offsets[channel+SCALE] != -1)
+                out.setScale(bone.index, sample(channel+SCALE, time));
+        }
+    }
+    @Override
+    public float getAnimationLength(){
+        return length;
+    }
+    public int getByteSize(){
+        return 8 + bones.length*16 + offsets.length*20 + data.length*2;
+    }
+
+    public byte[] write(){
+        ByteBuffer out = ByteBuffer.allocate(getByteSize());
+        out.putFloat(length);
+        out.putInt(bones.length);
+        for(UUID bone : bones){
+            out.putLong(bone.getMostSignificantBits());
+            out.putLong(bone.getLeastSignificantBits());
+        }
+        for(int i = 0;i < offsets.length;i++){
+            out.putInt(offsets[i]);
+            out.putInt(keyCounts[i]);
+            out.putFloat(sampleRates[i]);
+            out.putFloat(minimums[i]);
+            out.putFloat(ranges[i]);
+        }
+        out.asShortBuffer().put(data);
+        return out.array();
+    }
+    public static CompressedClip read(ByteBuffer in){
+        CompressedClip clip = new CompressedClip();
+        clip.length = in.getFloat();
+        clip.bones = new UUID[in.getInt()];
+        for(int i = 0;i < clip.bones.length;i++){
+            clip.bones[i] = new UUID(in.getLong(), in.getLong());
+        }
+        int channelCount = clip.bones.length*CHANNELS;
+        clip.offsets = new int[channelCount];
+        clip.keyCounts = new int[channelCount];
+        clip.sampleRates = new float[channelCount];
+        clip.minimums = new float[channelCount];
+        clip.ranges = new float[channelCount];
+        for(int i = 0;i < channelCount;i++){
+            clip.offsets[i] = in.getInt();
+            clip.keyCounts[i] = in.getInt();
+            clip.sampleRates[i] = in.getFloat();
+            clip.minimums[i] = in.getFloat();
+            clip.ranges[i] = in.getFloat();
+        }
+        clip.data = new short[in.remaining()/2];
+        in.asShortBuffer().get(clip.data);
+        return clip;
+    }
+
+    /**
+     * Stores a compressed clip next to the animation of every Animated Pose node in graph, see {@link BakedClip#bakeGraph}.
+     */
+    public static void compressGraph(JSONObject graph, float sampleRate, float tolerance, boolean stripKeyframes, Report report){
+        JSONObject nodes = graph.getJSONObject("nodes");
+        for(String id : nodes.keySet()){
+            JSONObject node = nodes.getJSONObject(id);
+            if(!node.getString("type").equals("Animated Pose"))
+                continue;
+            SpriteAnimation animation = new SpriteAnimation();
+            animation.load(node.getJSONObject("animation"));
+            CompressedClip clip = compress(BakedClip.bake(animation, sampleRate, 0), tolerance, report);
+            node.remove("baked");
+            node.put("compressed", new BinaryJson.Bytes(clip.write()));
+            if(stripKeyframes){
+                if(report != null)
+                    report.keyframeBytes += BinaryJson.encode(node.getJSONObject("animation")).length;
+                node.remove("animation");
+            }
+        }
+    }
+
+    /**
+     * Size of the compressed clips, of the keyframes they replace and the largest error of every bone, summed over any number of clips.
+     */
+    public static class Report {
+        /**
+         * Binary size of the keyframes removed by {@link #compressGraph}, 0 if they are kept next to the clips.
+         */
+        public long keyframeBytes;
+        public long compressedBytes;
+        public final LinkedHashMap<UUID, Float> maxErrors = new LinkedHashMap<>();
+        private void add(BakedClip clip, CompressedClip compressed){
+            compressedBytes += compressed.getByteSize();
+            for(int i = 0;i < compressed.bones.length;i++){
+                BakedClip.BakedTrack track = clip.boneTracks.get(compressed.bones[i]);
+                float error = maxErrors.getOrDefault(compressed.bones[i], 0f);
+                for(int channel = 0;channel < CHANNELS;channel++){
+                    BakedClip.Channel source = getChannel(track, channel);
+                    if(source == null)
+                        continue;
+                    for(int j = 0;j < source.samples.length;j++){
+                        error = Math.max(error, Math.abs(compressed.sample(i*CHANNELS+channel, j/source.sampleRate)-source.samples[j]));
+                    }
+                }
+                maxErrors.put(compressed.bones[i], error);
+            }
+        }
+        /**
+         * @return size change of the project, negative if the clips were added next to the keyframes
+         */
+        public long getSavedBytes(){
+            return keyframeBytes-compressedBytes;
+        }
+        /**
+         * @param names bone names by id, ids are printed for bones without name
+         */
+        public String format(Map<UUID, String> names){
+            StringBuilder builder = new StringBuilder();
+            if(keyframeBytes == 0)
+                builder.append("keyframes kept, clips add ").append(compressedBytes).append(" bytes\n");
+            else
+                builder.append("keyframes ").append(keyframeBytes).append(" -> clips ").append(compressedBytes).append(" bytes, saved ").append(getSavedBytes()).append('\n');
+            for(Map.Entry<UUID, Float> entry : maxErrors.entrySet()){
+                builder.append("  ").append(names.getOrDefault(entry.getKey(), entry.getKey().toString())).append(": max error ").append(entry.getValue()).append('\n');
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -2,37 +2,42 @@ package com.github.bitsky;
 
 import com.badlogic.gdx.math.Interpolation;
 
-import java.util.function.Function;
-
 public enum EInterpolationFunction {
-    Linear(0, "Linear", (f) -> f),
-    CircleIn(1, "CircleIn", Interpolation.circleIn::apply),
-    CircleOut(2, "CircleOut", Interpolation.circleOut::apply),
-    Circle(3, "Circle", Interpolation.circle::apply),
-    Bounce(4, "Bounce", Interpolation.bounce::apply),
-    BounceIn(5, "Bounce", Interpolation.bounceIn::apply),
-    BounceOut(6, "Bounce", Interpolation.bounceOut::apply),
-    Elastic(7, "Elastic", Interpolation.elastic::apply),
-    ElasticIn(8, "ElasticIn", Interpolation.elasticIn::apply),
-    ElasticOut(9, "ElasticOut", Interpolation.elasticOut::apply),
-    Fade(10, "Fade", Interpolation.fade::apply),
-    SwingIn(11, "SwingIn", Interpolation.swingIn::apply),
-    SwingOut(12, "SwingOut", Interpolation.swingOut::apply),
-    Swing(13, "Swing", Interpolation.swing::apply),
-    Exp5(14, "Exp5", Interpolation.exp5::apply),
-    Exp5In(15, "Exp5In", Interpolation.exp5In::apply),
-    Exp5Out(16, "Exp5Out", Interpolation.exp5Out::apply);
+    Linear(0, "Linear", Interpolation.linear),
+    CircleIn(1, "CircleIn", Interpolation.circleIn),
+    CircleOut(2, "CircleOut", Interpolation.circleOut),
+    Circle(3, "Circle", Interpolation.circle),
+    Bounce(4, "Bounce", Interpolation.bounce),
+    BounceIn(5, "Bounce", Interpolation.bounceIn),
+    BounceOut(6, "Bounce", Interpolation.bounceOut),
+    Elastic(7, "Elastic", Interpolation.elastic),
+    ElasticIn(8, "ElasticIn", Interpolation.elasticIn),
+    ElasticOut(9, "ElasticOut", Interpolation.elasticOut),
+    Fade(10, "Fade", Interpolation.fade),
+    SwingIn(11, "SwingIn", Interpolation.swingIn),
+    SwingOut(12, "SwingOut", Interpolation.swingOut),
+    Swing(13, "Swing", Interpolation.swing),
+    Exp5(14, "Exp5", Interpolation.exp5),
+    Exp5In(15, "Exp5In", Interpolation.exp5In),
+    Exp5Out(16, "Exp5Out", Interpolation.exp5Out);
 
     public byte id;
     public String name;
-    public Function<Float,Float> function;
+    public Interpolation function;
 
-    EInterpolationFunction(int id, String name, Function<Float, Float> function) {
+    EInterpolationFunction(int id, String name, Interpolation function) {
         this.id = (byte) id;
         this.name = name;
         this.function = function;
     }
 
+    /**
+     * Eases alpha from 0 to 1 without boxing.
+     */
+    public float apply(float alpha){
+        return function.apply(alpha);
+    }
+
     public static EInterpolationFunction byId(byte id){
         for(EInterpolationFunction interpolationFunction : values()){
             if(interpolationFunction.id == id)
@@ -15,6 +15,8 @@ import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.scenes.scene2d.InputEvent;
 import com.badlogic.gdx.scenes.scene2d.Stage;
 import com.badlogic.gdx.scenes.scene2d.ui.HorizontalGroup;
+import com.badlogic.gdx.scenes.scene2d.ui.Label;
+import com.badlogic.gdx.scenes.scene2d.ui.ProgressBar;
 import com.badlogic.gdx.scenes.scene2d.ui.TextButton;
 import com.badlogic.gdx.scenes.scene2d.utils.ClickListener;
 import com.badlogic.gdx.utils.Scaling;
@@ -35,6 +37,10 @@ public abstract class Editor implements InputProcessor {
     private HorizontalGroup ioButtonGroup;
     private TextButton saveButton;
     private TextButton loadButton;
+    private HorizontalGroup ioProgressGroup;
+    private Label ioLabel;
+    private ProgressBar ioProgressBar;
+    private Label ioErrorLabel;
 
     public Editor() {
         this.camera = new OrthographicCamera(1920, 1080);
@@ -49,6 +55,24 @@ public abstract class Editor implements InputProcessor {
         this.ioButtonGroup.addActor(this.saveButton);
         this.ioButtonGroup.addActor(this.loadButton);
         this.stage.addActor(this.ioButtonGroup);
+        this.ioProgressGroup = new HorizontalGroup();
+        this.ioProgressGroup.space(5);
+        this.ioLabel = new Label("", ISpriteMain.getSkin());
+        this.ioProgressBar = new ProgressBar(0, 1, 0.01f, false, ISpriteMain.getSkin());
+        this.ioProgressGroup.addActor(this.ioLabel);
+        this.ioProgressGroup.addActor(this.ioProgressBar);
+        this.ioProgressGroup.setVisible(false);
+        this.stage.addActor(this.ioProgressGroup);
+        this.ioErrorLabel = new Label("", ISpriteMain.getSkin());
+        this.ioErrorLabel.setColor(Color.RED);
+        this.ioErrorLabel.setVisible(false);
+        this.ioErrorLabel.addListener(new ClickListener() {
+            @Override
+            public void clicked(InputEvent event, float x, float y) {
+                ISpriteMain.getInstance().dismissIoError();
+            }
+        });
+        this.stage.addActor(this.ioErrorLabel);
         this.saveButton.addListener(new ClickListener() {
             @Override
             public void clicked(InputEvent event, float x, float y) {
@@ -68,6 +92,19 @@ public abstract class Editor implements InputProcessor {
             this.stage.getWidth() - 128,
             this.stage.getHeight() - 30
         );
+        String ioTask = ISpriteMain.getInstance().getIoTask();
+        this.ioProgressGroup.setVisible(ioTask != null);
+        if(ioTask != null){
+            this.ioLabel.setText(ioTask);
+            this.ioProgressBar.setValue(ISpriteMain.getInstance().getIoProgress());
+            this.ioProgressGroup.setPosition(this.stage.getWidth() - 128 - this.ioProgressGroup.getPrefWidth(), this.stage.getHeight() - 30);
+        }
+        String ioError = ISpriteMain.getInstance().getIoError();
+        this.ioErrorLabel.setVisible(ioError != null);
+        if(ioError != null){
+            this.ioErrorLabel.setText(ioError + " (click to dismiss)");
+            this.ioErrorLabel.setPosition(this.stage.getWidth() - 128 - this.ioErrorLabel.getPrefWidth(), this.stage.getHeight() - 30);
+        }
 
         if(Gdx.input.isButtonPressed(Input.Buttons.MIDDLE)){
             camera.position.add(new Vector3(-ISpriteMain.getMouseDeltaX(), ISpriteMain.getMouseDeltaY(), 0));
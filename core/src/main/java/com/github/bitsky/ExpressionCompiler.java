@@ -0,0 +1,539 @@
+package com.github.bitsky;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Compiles the exp4j syntax used by graph node fields into a generated class, so evaluating it is a plain method call
+ * the JIT can inline. Constant subexpressions are folded and expressions with the same structure share one class.
+ * Every class is defined by its own class loader, so it is unloaded once neither the bounded cache nor a caller
+ * references it anymore.
+ * Functions without a {@link Math} counterpart are not supported, {@link #compile} returns null for them and the caller
+ * should fall back to exp4j.
+ */
+public class ExpressionCompiler {
+    private static final HashMap<String, DoubleUnaryOperator> FUNCTIONS = new HashMap<>();
+    private static final HashMap<String, Double> CONSTANTS = new HashMap<>();
+    private static final int CACHE_SIZE = 256;
+    /**
+     * Least recently used generated classes by canonical form.
+     */
+    private static final LinkedHashMap<String, CompiledExpression> compiled = new LinkedHashMap<>(16, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CompiledExpression> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    private static final AtomicInteger classCounter = new AtomicInteger();
+    static {
+        FUNCTIONS.put("sin", Math::sin);
+        FUNCTIONS.put("cos", Math::cos);
+        FUNCTIONS.put("tan", Math::tan);
+        FUNCTIONS.put("asin", Math::asin);
+        FUNCTIONS.put("acos", Math::acos);
+        FUNCTIONS.put("atan", Math::atan);
+        FUNCTIONS.put("sinh", Math::sinh);
+        FUNCTIONS.put("cosh", Math::cosh);
+        FUNCTIONS.put("tanh", Math::tanh);
+        FUNCTIONS.put("sqrt", Math::sqrt);
+        FUNCTIONS.put("cbrt", Math::cbrt);
+        FUNCTIONS.put("exp", Math::exp);
+        FUNCTIONS.put("expm1", Math::expm1);
+        FUNCTIONS.put("log", Math::log);
+        FUNCTIONS.put("log10", Math::log10);
+        FUNCTIONS.put("log1p", Math::log1p);
+        FUNCTIONS.put("abs", Math::abs);
+        FUNCTIONS.put("floor", Math::floor);
+        FUNCTIONS.put("ceil", Math::ceil);
+        FUNCTIONS.put("signum", Math::signum);
+        CONSTANTS.put("pi", Math.PI);
+        CONSTANTS.put("\u03C0", Math.PI);
+        CONSTANTS.put("e", Math.E);
+        CONSTANTS.put("\u03C6", 1.61803398874d);
+    }
+
+    /**
+     * @param variables names that may be used in the expression
+     * @return null if the expression uses syntax or functions the compiler does not support
+     */
+    public static Compiled compile(String text, Collection<String> variables){
+        ArrayList<String> slots = new ArrayList<>();
+        Node root;
+        try {
+            Parser parser = new Parser(tokenize(text), new HashSet<>(variables), slots);
+            root = parser.parseExpression();
+            if(parser.position != parser.tokens.size())
+                return null;
+        } catch (IllegalArgumentException e){
+            return null;
+        }
+        CompiledExpression expression;
+        if(root.kind == Node.CONSTANT){
+            float value = (float) root.value;
+            expression = values -> value;
+        } else {
+            synchronized(compiled){
+                expression = compiled.computeIfAbsent(root.toString(), canonical -> define(root));
+            }
+            if(expression == null)
+                return null;
+        }
+        return new Compiled(expression, slots.toArray(new String[0]));
+    }
+
+    public static class Compiled {
+        public final CompiledExpression expression;
+        /**
+         * Variable name of every value slot.
+         */
+        public final String[] variables;
+        public Compiled(CompiledExpression expression, String[] variables) {
+            this.expression = expression;
+            this.variables = variables;
+        }
+    }
+
+    private static ArrayList<Object> tokenize(String text){
+        ArrayList<Object> tokens = new ArrayList<>();
+        int i = 0;
+        while(i < text.length()){
+            char c = text.charAt(i);
+            if(Character.isWhitespace(c)){
+                i++;
+            } else if(Character.isDigit(c) || c == '.'){
+                int start = i;
+                while(i < text.length() && (Character.isDigit(text.charAt(i)) || text.charAt(i) == '.'))
+                    i++;
+                if(i < text.length() && (text.charAt(i) == 'e' || text.charAt(i) == 'E')){
+                    int exponent = i+1;
+                    if(exponent < text.length() && (text.charAt(exponent) == '+' || text.charAt(exponent) == '-'))
+                        exponent++;
+                    if(exponent < text.length() && Character.isDigit(text.charAt(exponent))){
+                        i = exponent;
+                        while(i < text.length() && Character.isDigit(text.charAt(i)))
+                            i++;
+                    }
+                }
+                tokens.add(Double.parseDouble(text.substring(start, i)));
+            } else if(Character.isLetter(c) || c == '_'){
+                int start = i;
+                while(i < text.length() && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '_'))
+                    i++;
+                tokens.add(text.substring(start, i));
+            } else if("+-*/%^(),".indexOf(c) != -1){
+                tokens.add(c);
+                i++;
+            } else {
+                throw new IllegalArgumentException("unexpected " + c);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Recursive descent with exp4j precedence, unary signs bind weaker than ^ and juxtaposed operands multiply.
+     */
+    private static class Parser {
+        public final ArrayList<Object> tokens;
+        public final HashSet<String> variables;
+        public final ArrayList<String> slots;
+        public int position;
+        public Parser(ArrayList<Object> tokens, HashSet<String> variables, ArrayList<String> slots) {
+            this.tokens = tokens;
+            this.variables = variables;
+            this.slots = slots;
+        }
+        public Node parseExpression(){
+            Node node = parseTerm();
+            while(peek('+') || peek('-')){
+                char operator = (Character) tokens.get(position++);
+                node = Node.binary(operator, node, parseTerm());
+            }
+            return node;
+        }
+        private Node parseTerm(){
+            Node node = parseFactor();
+            while(true){
+                if(peek('*') || peek('/') || peek('%')){
+                    char operator = (Character) tokens.get(position++);
+                    node = Node.binary(operator, node, parseFactor());
+                } else if(position < tokens.size() && (peek('(') || !(tokens.get(position) instanceof Character))){
+                    node = Node.binary('*', node, parseFactor());
+                } else {
+                    return node;
+                }
+            }
+        }
+        private Node parseFactor(){
+            if(peek('-')){
+                position++;
+                return Node.negate(parseFactor());
+            }
+            if(peek('+')){
+                position++;
+                return parseFactor();
+            }
+            Node node = parsePrimary();
+            if(peek('^')){
+                position++;
+                return Node.binary('^', node, parseFactor());
+            }
+            return node;
+        }
+        private Node parsePrimary(){
+            if(position >= tokens.size())
+                throw new IllegalArgumentException("unexpected end");
+            Object token = tokens.get(position++);
+            if(token instanceof Double)
+                return Node.constant((Double) token);
+            if(token instanceof String){
+                String name = (String) token;
+                if(peek('(') && !variables.contains(name))
+                    return parseFunction(name);
+                if(variables.contains(name)){
+                    int slot = slots.indexOf(name);
+                    if(slot == -1){
+                        slot = slots.size();
+                        slots.add(name);
+                    }
+                    return Node.variable(slot);
+                }
+                if(CONSTANTS.containsKey(name))
+                    return Node.constant(CONSTANTS.get(name));
+                throw new IllegalArgumentException("unknown variable " + name);
+            }
+            if(token.equals('(')){
+                Node node = parseExpression();
+                expect(')');
+                return node;
+            }
+            throw new IllegalArgumentException("unexpected " + token);
+        }
+        private Node parseFunction(String name){
+            expect('(');
+            ArrayList<Node> arguments = new ArrayList<>();
+            arguments.add(parseExpression());
+            while(peek(',')){
+                position++;
+                arguments.add(parseExpression());
+            }
+            expect(')');
+            if(name.equals("pow") && arguments.size() == 2)
+                return Node.binary('^', arguments.get(0), arguments.get(1));
+            if(FUNCTIONS.containsKey(name) && arguments.size() == 1)
+                return Node.function(name, arguments.get(0));
+            throw new IllegalArgumentException("unsupported function " + name);
+        }
+        private boolean peek(char operator){
+            return position < tokens.size() && tokens.get(position).equals(operator);
+        }
+        private void expect(char operator){
+            if(!peek(operator))
+                throw new IllegalArgumentException("expected " + operator);
+            position++;
+        }
+    }
+
+    private static class Node {
+        public static final int CONSTANT = 0;
+        public static final int VARIABLE = 1;
+        public static final int NEGATE = 2;
+        public static final int FUNCTION = 3;
+        public static final int BINARY = 4;
+        public final int kind;
+        public double value;
+        public int slot;
+        public char operator;
+        public String function;
+        public Node left;
+        public Node right;
+        private Node(int kind) {
+            this.kind = kind;
+        }
+        public static Node constant(double value){
+            Node node = new Node(CONSTANT);
+            node.value = value;
+            return node;
+        }
+        public static Node variable(int slot){
+            Node node = new Node(VARIABLE);
+            node.slot = slot;
+            return node;
+        }
+        public static Node negate(Node child){
+            if(child.kind == CONSTANT)
+                return constant(-child.value);
+            Node node = new Node(NEGATE);
+            node.left = child;
+            return node;
+        }
+        public static Node function(String function, Node child){
+            if(child.kind == CONSTANT)
+                return constant(FUNCTIONS.get(function).applyAsDouble(child.value));
+            Node node = new Node(FUNCTION);
+            node.function = function;
+            node.left = child;
+            return node;
+        }
+        public static Node binary(char operator, Node left, Node right){
+            if(left.kind == CONSTANT && right.kind == CONSTANT)
+                return constant(apply(operator, left.value, right.value));
+            Node node = new Node(BINARY);
+            node.operator = operator;
+            node.left = left;
+            node.right = right;
+            return node;
+        }
+        private static double apply(char operator, double a, double b){
+            switch(operator){
+                case '+': return a+b;
+                case '-': return a-b;
+                case '*': return a*b;
+                case '/': return a/b;
+                case '%': return a%b;
+                default: return Math.pow(a, b);
+            }
+        }
+        /**
+         * Operand stack words needed to evaluate this node, every value is a double.
+         */
+        public int getStackSize(){
+            switch(kind){
+                case NEGATE:
+                case FUNCTION:
+                    return left.getStackSize();
+                case BINARY:
+                    return Math.max(left.getStackSize(), 2+right.getStackSize());
+                default:
+                    return 2;
+            }
+        }
+        /**
+         * Canonical form with variables replaced by their slot, used to share generated classes.
+         */
+        @Override
+        public String toString() {
+            switch(kind){
+                case CONSTANT: return Double.toString(value);
+                case VARIABLE: return "$" + slot;
+                case NEGATE: return "(-" + left + ")";
+                case FUNCTION: return function + "(" + left + ")";
+                default: return "(" + left + operator + right + ")";
+            }
+        }
+    }
+
+    /**
+     * @return null if the class could not be generated or defined, the caller falls back to exp4j then
+     */
+    private static CompiledExpression define(Node root){
+        try {
+            String name = "com/github/bitsky/CompiledExpression$Generated" + classCounter.incrementAndGet();
+            byte[] bytes = generateClass(name, root);
+            Class<?> type = new GeneratedClassLoader().define(name.replace('/', '.'), bytes);
+            return (CompiledExpression) type.getDeclaredConstructor().newInstance();
+        } catch (Exception | LinkageError e){
+            return null;
+        }
+    }
+    /**
+     * Loader of a single generated class, it and the class become unreachable together.
+     */
+    private static class GeneratedClassLoader extends ClassLoader {
+        public GeneratedClassLoader() {
+            super(ExpressionCompiler.class.getClassLoader());
+        }
+        public Class<?> define(String name, byte[] bytes){
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    /**
+     * Writes a class file implementing {@link CompiledExpression}. The method body is straight line code, so no stack map
+     * frames are required.
+     */
+    private static byte[] generateClass(String name, Node root) throws IOException {
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.classReference(name);
+        int superClass = pool.classReference("java/lang/Object");
+        int interfaceClass = pool.classReference("com/github/bitsky/CompiledExpression");
+        int objectConstructor = pool.methodReference("java/lang/Object", "<init>", "()V");
+        int constructorName = pool.utf8("<init>");
+        int constructorDescriptor = pool.utf8("()V");
+        int evaluateName = pool.utf8("evaluate");
+        int evaluateDescriptor = pool.utf8("([F)F");
+        int codeName = pool.utf8("Code");
+
+        ByteArrayOutputStream constructorCode = new ByteArrayOutputStream();
+        constructorCode.write(0x2a); // aload_0
+        constructorCode.write(0xb7); // invokespecial
+        writeShort(constructorCode, objectConstructor);
+        constructorCode.write(0xb1); // return
+
+        ByteArrayOutputStream evaluateCode = new ByteArrayOutputStream();
+        emit(root, evaluateCode, pool);
+        evaluateCode.write(0x90); // d2f
+        evaluateCode.write(0xae); // freturn
+        if(evaluateCode.size() > 65535)
+            throw new IllegalArgumentException("expression too large");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(55);
+        out.writeShort(pool.count);
+        pool.bytes.writeTo(out);
+        out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);
+        out.writeShort(interfaceClass);
+        out.writeShort(0);
+        out.writeShort(2);
+        writeMethod(out, constructorName, constructorDescriptor, codeName, 1, 1, constructorCode.toByteArray());
+        writeMethod(out, evaluateName, evaluateDescriptor, codeName, root.getStackSize(), 2, evaluateCode.toByteArray());
+        out.writeShort(0);
+        out.flush();
+        return bytes.toByteArray();
+    }
+    private static void writeMethod(DataOutputStream out, int name, int descriptor, int codeName, int maxStack, int maxLocals, byte[] code) throws IOException {
+        out.writeShort(ACC_PUBLIC);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+    private static void emit(Node node, ByteArrayOutputStream code, ConstantPool pool){
+        switch(node.kind){
+            case Node.CONSTANT:
+                if(Double.doubleToRawLongBits(node.value) == 0L){
+                    code.write(0x0e); // dconst_0
+                } else if(node.value == 1){
+                    code.write(0x0f); // dconst_1
+                } else {
+                    code.write(0x14); // ldc2_w
+                    writeShort(code, pool.doubleConstant(node.value));
+                }
+                break;
+            case Node.VARIABLE:
+                code.write(0x2b); // aload_1
+                if(node.slot <= 5){
+                    code.write(0x03 + node.slot); // iconst_n
+                } else if(node.slot < 128){
+                    code.write(0x10); // bipush
+                    code.write(node.slot);
+                } else {
+                    code.write(0x11); // sipush
+                    writeShort(code, node.slot);
+                }
+                code.write(0x30); // faload
+                code.write(0x8d); // f2d
+                break;
+            case Node.NEGATE:
+                emit(node.left, code, pool);
+                code.write(0x77); // dneg
+                break;
+            case Node.FUNCTION:
+                emit(node.left, code, pool);
+                code.write(0xb8); // invokestatic
+                writeShort(code, pool.methodReference("java/lang/Math", node.function, "(D)D"));
+                break;
+            case Node.BINARY:
+                emit(node.left, code, pool);
+                emit(node.right, code, pool);
+                switch(node.operator){
+                    case '+': code.write(0x63); break; // dadd
+                    case '-': code.write(0x67); break; // dsub
+                    case '*': code.write(0x6b); break; // dmul
+                    case '/': code.write(0x6f); break; // ddiv
+                    case '%': code.write(0x73); break; // drem
+                    default:
+                        code.write(0xb8); // invokestatic
+                        writeShort(code, pool.methodReference("java/lang/Math", "pow", "(DD)D"));
+                }
+                break;
+        }
+    }
+    private static void writeShort(ByteArrayOutputStream out, int value){
+        out.write((value >>> 8) & 0xFF);
+        out.write(value & 0xFF);
+    }
+
+    private static class ConstantPool {
+        public final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final HashMap<String, Integer> entries = new HashMap<>();
+        public int count = 1;
+        public int utf8(String value){
+            return entry("utf8 " + value, 1, () -> {
+                out.writeByte(1);
+                out.writeUTF(value);
+            });
+        }
+        public int classReference(String name){
+            int nameIndex = utf8(name);
+            return entry("class " + name, 1, () -> {
+                out.writeByte(7);
+                out.writeShort(nameIndex);
+            });
+        }
+        public int methodReference(String owner, String name, String descriptor){
+            int ownerIndex = classReference(owner);
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            int nameAndType = entry("nameAndType " + name + descriptor, 1, () -> {
+                out.writeByte(12);
+                out.writeShort(nameIndex);
+                out.writeShort(descriptorIndex);
+            });
+            return entry("method " + owner + "." + name + descriptor, 1, () -> {
+                out.writeByte(10);
+                out.writeShort(ownerIndex);
+                out.writeShort(nameAndType);
+            });
+        }
+        public int doubleConstant(double value){
+            return entry("double " + Double.doubleToRawLongBits(value), 2, () -> {
+                out.writeByte(6);
+                out.writeDouble(value);
+            });
+        }
+        private int entry(String key, int size, Writer writer){
+            Integer index = entries.get(key);
+            if(index != null)
+                return index;
+            try {
+                writer.write();
+            } catch (IOException e){
+                throw new RuntimeException(e);
+            }
+            entries.put(key, count);
+            count += size;
+            return count-size;
+        }
+        private interface Writer {
+            void write() throws IOException;
+        }
+    }
+}
@@ -1,8 +1,5 @@
 package com.github.bitsky;
 
-import au.edu.federation.caliko.FabrikBone2D;
-import au.edu.federation.caliko.FabrikChain2D;
-import au.edu.federation.utils.Vec2f;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Input;
 import com.badlogic.gdx.InputMultiplexer;
@@ -24,15 +21,23 @@ import com.badlogic.gdx.scenes.scene2d.ui.*;
 import com.badlogic.gdx.scenes.scene2d.utils.ChangeListener;
 import com.badlogic.gdx.scenes.scene2d.utils.ClickListener;
 import com.badlogic.gdx.scenes.scene2d.utils.DragAndDrop;
+import com.badlogic.gdx.scenes.scene2d.utils.FocusListener;
 import com.badlogic.gdx.scenes.scene2d.utils.ScissorStack;
-import net.objecthunter.exp4j.Expression;
-import net.objecthunter.exp4j.ExpressionBuilder;
+import com.github.bitsky.runtime.GraphDefinition;
+import com.github.bitsky.runtime.GraphEvaluator;
+import com.github.bitsky.runtime.GraphInstance;
+import com.github.bitsky.runtime.IKConstraintNode;
+import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.util.*;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+/**
+ * Edits the node graph. Nodes are only views of their settings, the preview loads the saved graph into a
+ * {@link GraphDefinition} whenever it changed and plays it like the runtime does.
+ */
 public class GraphEditor extends Editor {
     private final Texture linkInputTexture;
     private final Texture linkInputFilledTexture;
@@ -43,6 +48,15 @@ public class GraphEditor extends Editor {
     private Table rightClickMenu;
     private HashMap<String, Supplier<GraphNode>> nodeTypes;
     public HashMap<UUID,InputProperty> properties;
+    private int graphVersion;
+    /**
+     * Playback state of the shown node, null if it depends on itself.
+     */
+    private GraphInstance preview;
+    private GraphEvaluator previewEvaluator;
+    private int previewVersion = -1;
+    private UUID previewRoot;
+    private final PoseBuffer emptyPose = new PoseBuffer(0);
 
     private FinalPoseGraphNode finalPoseGraphNode;
 
@@ -84,7 +98,8 @@ public class GraphEditor extends Editor {
         resetButton.addListener(new ClickListener(){
             @Override
             public void clicked(InputEvent event, float x, float y) {
-                finalPoseGraphNode.reset();
+                if(preview != null)
+                    preview.reset();
                 setPlaying(false);
             }
         });
@@ -137,6 +152,7 @@ public class GraphEditor extends Editor {
         nodeTypes.put("State Machine", StateGraphNode::new);
         nodeTypes.put("Symmetry Constraint", SymmetryConstraintGraphNode::new);
         nodeTypes.put("IK Constraint", IKConstraintGraphNode::new);
+        nodeTypes.put("Layer Blend", LayerBlendGraphNode::new);
     }
     public JSONObject save(){
         JSONObject json = new JSONObject();
@@ -186,7 +202,8 @@ public class GraphEditor extends Editor {
             inputProperty.value = propertyJson.getFloat("value");
             inputProperty.resetValue = propertyJson.has("resetValue")?propertyJson.getFloat("resetValue"):null;
             properties.put(inputProperty.id, inputProperty);
-;        }
+        }
+        graphChanged();
         refreshPropertyTable();
     }
 
@@ -200,6 +217,7 @@ public class GraphEditor extends Editor {
 
         this.nodes.remove(node.id, node);
         this.nodes.forEach((nodeKey, nodeValue) -> nodeValue.disconnectAll(node));
+        graphChanged();
     }
 
     public <T extends GraphNode> T addNode(T node, Vector2 position){
@@ -207,14 +225,51 @@ public class GraphEditor extends Editor {
         this.graphStage.addActor(node.window);
         node.window.pack();
         node.window.setPosition(position.x, position.y);
+        graphChanged();
         return node;
     }
     public void addProperty(String name){
         InputProperty property = new InputProperty();
         property.name = name;
         this.properties.put(property.id, property);
+        graphChanged();
         refreshPropertyTable();
     }
+    /**
+     * Must be called after nodes, their settings, connections or properties changed, so the preview loads the graph again.
+     */
+    public void graphChanged(){
+        graphVersion++;
+    }
+    /**
+     * Loads the saved graph after it changed, keeping the state of the nodes that still exist, with the shown node
+     * as final pose.
+     * @return playback state of the shown node, null if it depends on itself
+     */
+    public GraphInstance getPreview(){
+        if(this.outputShowNode == null || !nodes.containsKey(this.outputShowNode)){
+            this.outputShowNode = finalPoseGraphNode.id;
+        }
+        if(previewVersion == graphVersion && outputShowNode.equals(previewRoot))
+            return preview;
+        JSONObject graph = save();
+        if(!outputShowNode.equals(finalPoseGraphNode.id))
+            graph.put("final", new JSONObject().put("inputs", new JSONObject().put("Out", outputShowNode.toString())));
+        GraphInstance previous = preview;
+        try {
+            GraphDefinition definition = GraphDefinition.load(graph);
+            preview = new GraphInstance(definition);
+            previewEvaluator = new GraphEvaluator(definition);
+            if(previous != null)
+                preview.copyStateFrom(previous);
+        } catch (IllegalArgumentException e){
+            preview = null;
+            previewEvaluator = null;
+        }
+        previewVersion = graphVersion;
+        previewRoot = outputShowNode;
+        return preview;
+    }
     private void refreshPropertyTable(){
         propertiesTable.clearChildren();
         for(InputProperty property : properties.values()){
@@ -235,6 +290,7 @@ public class GraphEditor extends Editor {
                 @Override
                 public void clicked(InputEvent event, float x, float y) {
                     properties.remove(property.id);
+                    graphChanged();
                     refreshPropertyTable();
                 }
             });
@@ -271,22 +327,33 @@ public class GraphEditor extends Editor {
         shapeRenderer.setProjectionMatrix(camera.combined);
 
         super.render();
-        if(playing) {
-            finalPoseGraphNode.tick(Gdx.graphics.getDeltaTime());
-            if(finalPoseGraphNode.isFinished())
-                setPlaying(false);
-        }
-        if(this.outputShowNode == null || !nodes.containsKey(this.outputShowNode)){
-            this.outputShowNode = finalPoseGraphNode.id;
-        }
-        this.animationPlayer.pose = nodes.get(outputShowNode).getOutputPose();
-        for(InputProperty property : properties.values()){
-            if(property.resetValue != null) {
-                if(property.value != property.resetValue) {
-                    property.value = property.resetValue;
-                    refreshPropertyTable();
+        AnimatedSprite sprite = ISpriteMain.getInstance().sprite;
+        GraphInstance preview = getPreview();
+        if(preview == null){
+            emptyPose.ensureCapacity(sprite.getBoneCapacity());
+            this.animationPlayer.pose = emptyPose;
+        } else {
+            UUID[] propertyIds = preview.definition.propertyIds;
+            for(int i = 0;i < propertyIds.length;i++){
+                preview.properties[i] = properties.get(propertyIds[i]).value;
+            }
+            if(playing) {
+                preview.tick(Gdx.graphics.getDeltaTime());
+                if(preview.isFinished())
+                    setPlaying(false);
+            }
+            this.animationPlayer.pose = previewEvaluator.evaluate(preview, sprite);
+            preview.endFrame();
+            boolean changed = false;
+            for(int i = 0;i < propertyIds.length;i++){
+                InputProperty property = properties.get(propertyIds[i]);
+                if(property.value != preview.properties[i]){
+                    property.value = preview.properties[i];
+                    changed = true;
                 }
             }
+            if(changed)
+                refreshPropertyTable();
         }
 
         if(Gdx.input.isButtonPressed(Input.Buttons.MIDDLE)){
@@ -433,6 +500,8 @@ public class GraphEditor extends Editor {
             }
 
             toRemove.forEach(this.inputs::remove);
+            if(!toRemove.isEmpty())
+                graphChanged();
         }
 
         public void addInput(String name){
@@ -453,6 +522,7 @@ public class GraphEditor extends Editor {
                 public void clicked(InputEvent event, float x, float y) {
                     inputs.remove(id);
                     textureRegion.setTexture(linkInputTexture);
+                    graphChanged();
                     super.clicked(event, x, y);
                 }
             });
@@ -467,42 +537,17 @@ public class GraphEditor extends Editor {
                     ConnectionData output = (ConnectionData) payload.getObject();
                     inputs.put(id, output.first);
                     textureRegion.setTexture(linkInputFilledTexture);
+                    graphChanged();
                 }
             });
             verticalGroup.addActor(hgroup);
             this.inputActors.put(id, dragInput);
         }
 
-        public abstract AnimatedSpritePose getOutputPose();
-
-        public void tick(float step) {
-            for(UUID input : inputs.values()){
-                nodes.get(input).tick(step);
-            }
-        }
-
-        public void reset() {
-            for(UUID input : inputs.values()){
-                nodes.get(input).reset();
-            }
-        }
-        public boolean isFinished() {
-            for(UUID input : inputs.values()){
-                if(nodes.get(input).isFinished())
-                    return true;
-            }
-            return inputs.isEmpty();
-        }
         public boolean hasOutput() {
             return true;
         }
 
-        public AnimatedSpritePose getInput(String input) {
-            if(!inputs.containsKey(input))
-                return new AnimatedSpritePose(new HashMap<>());
-            return nodes.get(inputs.get(input)).getOutputPose();
-        }
-
         public JSONObject save(){
             JSONObject json = new JSONObject();
             json.put("type", getTypeName());
@@ -539,10 +584,6 @@ public class GraphEditor extends Editor {
             return "";
         }
 
-        @Override
-        public AnimatedSpritePose getOutputPose() {
-            return getInput("Out");
-        }
         @Override
         public boolean hasOutput() {
             return false;
@@ -552,8 +593,6 @@ public class GraphEditor extends Editor {
     public class AnimatedPoseGraphNode extends GraphNode{
         public final SpriteAnimation animation;
         public boolean isLooping;
-
-        public float time;
         private CheckBox loopingCheckBox;
         public AnimatedPoseGraphNode() {
             super("Animated Pose", "KeyFramed animation.", true);
@@ -572,39 +611,18 @@ public class GraphEditor extends Editor {
                 @Override
                 public void changed(ChangeEvent changeEvent, Actor actor) {
                     isLooping = loopingCheckBox.isChecked();
+                    graphChanged();
                 }
             });
             this.verticalGroup.addActor(loopingCheckBox);
             this.verticalGroup.addActor(enterButton);
         }
 
-        @Override
-        public void reset() {
-            time = 0;
-        }
-        @Override
-        public void tick(float step) {
-            time += step;
-            if(isLooping)
-                time %= animation.getAnimationLength();
-        }
-        @Override
-        public boolean isFinished() {
-            if(isLooping)
-                return false;
-            return time > animation.getAnimationLength();
-        }
-
         @Override
         public String getTypeName() {
             return "Animated Pose";
         }
 
-        @Override
-        public AnimatedSpritePose getOutputPose() {
-            return animation.getPose(time);
-        }
-
         @Override
         public JSONObject save() {
             JSONObject json = super.save();
@@ -630,7 +648,7 @@ public class GraphEditor extends Editor {
 
             this.window.add(new Label("Blend: ", ISpriteMain.getSkin()));
 
-            this.blendValueField = new TextField(String.valueOf(0.5), ISpriteMain.getSkin());
+            this.blendValueField = createExpressionField(String.valueOf(0.5));
             this.window.add(blendValueField);
         }
 
@@ -639,11 +657,6 @@ public class GraphEditor extends Editor {
             return "Blend Pose";
         }
 
-        @Override
-        public AnimatedSpritePose getOutputPose() {
-            return getInput("Pose1").lerp(getInput("Pose2"), evaluateExpression(blendValueField.getText()));
-        }
-
         @Override
         public JSONObject save() {
             JSONObject json = super.save();
@@ -663,7 +676,7 @@ public class GraphEditor extends Editor {
             super("Multiply Pose", "Multiplies pose by set value.", true);
             addInput("Pose");
             this.window.add(new Label("Multiply: ", ISpriteMain.getSkin()));
-            this.multiplyValueField = new TextField("1", ISpriteMain.getSkin());
+            this.multiplyValueField = createExpressionField("1");
             this.window.add(multiplyValueField);
         }
 
@@ -672,10 +685,6 @@ public class GraphEditor extends Editor {
             return "Multiply Pose";
         }
 
-        @Override
-        public AnimatedSpritePose getOutputPose() {
-            return getInput("Pose").multiply(evaluateExpression(multiplyValueField.getText()));
-        }
         @Override
         public JSONObject save() {
             JSONObject json = super.save();
@@ -700,11 +709,6 @@ public class GraphEditor extends Editor {
         public String getTypeName() {
             return "Add Pose";
         }
-
-        @Override
-        public AnimatedSpritePose getOutputPose() {
-            return getInput("Pose1").add(getInput("Pose2"));
-        }
     }
 
     public class SymmetryConstraintGraphNode extends GraphNode{
@@ -732,6 +736,15 @@ public class GraphEditor extends Editor {
                     return ISpriteMain.getInstance().sprite.bones.get(object).name;
                 }
             };
+            ChangeListener changeBone = new ChangeListener() {
+                @Override
+                public void changed(ChangeEvent changeEvent, Actor actor) {
+                    graphChanged();
+                }
+            };
+            this.projected.addListener(changeBone);
+            this.center.addListener(changeBone);
+            this.target.addListener(changeBone);
             HorizontalGroup projectedGroup = new HorizontalGroup();
             projectedGroup.addActor(new Label("projected: ", ISpriteMain.getSkin()));
             projectedGroup.addActor(projected);
@@ -762,28 +775,6 @@ public class GraphEditor extends Editor {
             return "Symmetry Constraint";
         }
 
-        @Override
-        public AnimatedSpritePose getOutputPose() {
-            AnimatedSpritePose pose = getInput("Input");
-            UUID projected = this.projected.getSelected();
-            UUID center = this.center.getSelected();
-            UUID target = this.target.getSelected();
-            if(projected == null || center == null || target == null || projected == center || center == target || target == projected)
-                return pose;
-            Transform pt = pose.boneTransforms.get(projected);
-            if(pt != null) {
-                pt.translation = null;
-            } else {
-                pt = new Transform();
-                pose.boneTransforms.put(projected, pt);
-            }
-            HashMap<UUID, Transform> transforms = pose.getBoneTransforms(ISpriteMain.getInstance().sprite, new Transform().lock());
-            Vector2 intendedPosition = transforms.get(center).translation.cpy().scl(2).sub(transforms.get(target).translation);
-            Transform parentTransform = transforms.get(ISpriteMain.getInstance().sprite.bones.get(projected).parent);
-            pt.translation = intendedPosition.rotateRad(-parentTransform.rotation).scl(1/parentTransform.scale).sub(parentTransform.translation);
-            return pose;
-        }
-
         @Override
         public void load(JSONObject json) {
             super.load(json);
@@ -808,6 +799,14 @@ public class GraphEditor extends Editor {
         private SelectBox<UUID> target;
         private boolean isClockwise;
         private CheckBox isClockwiseCheckbox;
+        /**
+         * Limits of joint i+1 in degrees, kept for joints beyond the current chain so shortening it loses nothing.
+         */
+        private float[] minLimits = new float[0];
+        private float[] maxLimits = new float[0];
+        private int limitCount;
+        private IKConstraintNode.Limits limits = IKConstraintNode.Limits.COUNTERCLOCKWISE;
+        private final VerticalGroup limitsGroup = new VerticalGroup();
         public IKConstraintGraphNode() {
             super("IK Constraint", "IK constraint.", true);
             addInput("Input");
@@ -825,6 +824,7 @@ public class GraphEditor extends Editor {
                         ISpriteMain.getInstance().sprite.bones.get(start.getSelected()).childrenRecursive(items);
                     }
                     end.setItems(items.toArray(UUID[]::new));
+                    refreshLimits();
                 }
             });
             this.end = new SelectBox<>(ISpriteMain.getSkin()){
@@ -839,12 +839,25 @@ public class GraphEditor extends Editor {
                     return ISpriteMain.getInstance().sprite.bones.get(object).name;
                 }
             };
+            this.end.addListener(new ChangeListener() {
+                @Override
+                public void changed(ChangeEvent changeEvent, Actor actor) {
+                    refreshLimits();
+                }
+            });
+            this.target.addListener(new ChangeListener() {
+                @Override
+                public void changed(ChangeEvent changeEvent, Actor actor) {
+                    graphChanged();
+                }
+            });
             this.isClockwiseCheckbox = new CheckBox("clockwise", ISpriteMain.getSkin());
             isClockwiseCheckbox.setChecked(isClockwise);
             isClockwiseCheckbox.addListener(new ChangeListener() {
                 @Override
                 public void changed(ChangeEvent changeEvent, Actor actor) {
                     isClockwise = isClockwiseCheckbox.isChecked();
+                    updateLimits();
                 }
             });
             verticalGroup.addActor(isClockwiseCheckbox);
@@ -862,6 +875,8 @@ public class GraphEditor extends Editor {
             targetGroup.addActor(new Label("target: ", ISpriteMain.getSkin()));
             targetGroup.addActor(target);
             verticalGroup.addActor(targetGroup);
+            limitsGroup.columnLeft();
+            verticalGroup.addActor(limitsGroup);
             refresh();
         }
 
@@ -872,71 +887,79 @@ public class GraphEditor extends Editor {
             this.start.fire(new ChangeListener.ChangeEvent());
             this.target.setItems(items);
         }
-
-        @Override
-        public String getTypeName() {
-            return "IK Constraint";
-        }
-
-        @Override
-        public AnimatedSpritePose getOutputPose() {
-            AnimatedSpritePose pose = getInput("Input");
-            UUID start = this.start.getSelected();
-            UUID end = this.end.getSelected();
-            UUID target = this.target.getSelected();
-            if(start == null || end == null || target == null || start == end || end == target || target == start)
-                return pose;
-
-            ArrayList<UUID> boneChain = new ArrayList<>();
-            boneChain.add(end);
-            for(UUID current = end;!start.equals(current);){
-                UUID parent = ISpriteMain.getInstance().sprite.bones.get(current).parent;
-                current = parent;
-                boneChain.add(parent);
+        /**
+         * Shows a row of bend limits for every joint after the first of the selected chain.
+         */
+        private void refreshLimits() {
+            int joints = 0;
+            AnimatedSprite sprite = ISpriteMain.getInstance().sprite;
+            AnimatedSpriteBone bone = end.getSelected() == null ? null : sprite.bones.get(end.getSelected());
+            while(bone != null && start.getSelected() != null){
+                joints++;
+                if(bone.id.equals(start.getSelected()))
+                    break;
+                bone = bone.parent == null ? null : sprite.bones.get(bone.parent);
             }
-            Collections.reverse(boneChain);
-
-            HashMap<UUID, Transform> transforms = pose.getBoneTransforms(ISpriteMain.getInstance().sprite, new Transform().lock());
-
-            float constraint = 90;
-            FabrikChain2D chain = new FabrikChain2D();
-            Vector2 firstBone = transforms.get(boneChain.get(0)).translation;
-            Vector2 secondBone = transforms.get(boneChain.get(1)).translation;
-            Vec2f prevPos = new Vec2f(secondBone.x, secondBone.y);
-            FabrikBone2D bone = new FabrikBone2D(new Vec2f(firstBone.x, firstBone.y), prevPos);
-            chain.addBone(bone);
-            for(int i = 2;i < boneChain.size();i++){
-                Vector2 position = transforms.get(boneChain.get(i)).translation;
-                Vec2f newPosition = new Vec2f(position.x, position.y);
-                Vec2f direction = newPosition.minus(prevPos);
-                chain.addConsecutiveConstrainedBone(direction, direction.length(), isClockwise?constraint:0, isClockwise?0:constraint);
-                prevPos = newPosition;
+            limitCount = bone == null ? 0 : Math.max(0, joints-2);
+            if(limitCount > minLimits.length){
+                int previous = minLimits.length;
+                minLimits = Arrays.copyOf(minLimits, limitCount);
+                maxLimits = Arrays.copyOf(maxLimits, limitCount);
+                Arrays.fill(maxLimits, previous, limitCount, IKConstraintNode.JOINT_LIMIT);
             }
-            Vector2 targetPos = transforms.get(target).translation;
-            chain.setMaxIterationAttempts(20);
-            chain.solveForTarget(new Vec2f(targetPos.x, targetPos.y));
-
-            float prevRot = transforms.get(start).rotation;
-            Vec2f prevDir = new Vec2f((float) -Math.sin(prevRot), (float) -Math.cos(prevRot));
-            for(int i = 0;i < chain.getNumBones();i++){
-                Vec2f newDirection = chain.getBone(i).getDirectionUV();
-                float angle = prevDir.getSignedAngleDegsTo(newDirection);
-                Transform t = pose.boneTransforms.computeIfAbsent(boneChain.get(i), k -> new Transform());
-                t.rotation = (float) Math.toRadians(angle);
-                prevDir = newDirection;
+            limitsGroup.clearChildren();
+            for(int i = 0;i < limitCount;i++){
+                final int joint = i;
+                TextField minField = new TextField(String.valueOf(minLimits[i]), ISpriteMain.getSkin());
+                TextField maxField = new TextField(String.valueOf(maxLimits[i]), ISpriteMain.getSkin());
+                ChangeListener changeLimit = new ChangeListener() {
+                    @Override
+                    public void changed(ChangeEvent changeEvent, Actor actor) {
+                        try {
+                            minLimits[joint] = Float.parseFloat(minField.getText());
+                            maxLimits[joint] = Float.parseFloat(maxField.getText());
+                            updateLimits();
+                        } catch (NumberFormatException ignored){}
+                    }
+                };
+                minField.addListener(changeLimit);
+                maxField.addListener(changeLimit);
+                HorizontalGroup limitGroup = new HorizontalGroup();
+                limitGroup.addActor(new Label("joint " + (i+1) + " bend: ", ISpriteMain.getSkin()));
+                limitGroup.addActor(minField);
+                limitGroup.addActor(new Label(" to ", ISpriteMain.getSkin()));
+                limitGroup.addActor(maxField);
+                limitsGroup.addActor(limitGroup);
             }
+            updateLimits();
+            window.pack();
+        }
+        private void updateLimits() {
+            limits = new IKConstraintNode.Limits(isClockwise, Arrays.copyOf(minLimits, limitCount), Arrays.copyOf(maxLimits, limitCount));
+            graphChanged();
+        }
 
-            return pose;
+        @Override
+        public String getTypeName() {
+            return "IK Constraint";
         }
 
         @Override
         public void load(JSONObject json) {
             super.load(json);
+            IKConstraintNode.Limits loaded = IKConstraintNode.Limits.load(json);
+            this.minLimits = new float[loaded.getCount()];
+            this.maxLimits = new float[loaded.getCount()];
+            for(int i = 0;i < loaded.getCount();i++){
+                minLimits[i] = loaded.getMin(i+1);
+                maxLimits[i] = loaded.getMax(i+1);
+            }
+            this.isClockwise = loaded.isClockwise;
             this.target.setSelected(UUID.fromString(json.getString("target")));
             this.end.setSelected(UUID.fromString(json.getString("end")));
             this.start.setSelected(UUID.fromString(json.getString("start")));
-            this.isClockwise = json.getBoolean("clockwise");
             this.isClockwiseCheckbox.setChecked(isClockwise);
+            refreshLimits();
         }
 
         @Override
@@ -945,7 +968,7 @@ public class GraphEditor extends Editor {
             json.put("target", target.getSelected());
             json.put("end", end.getSelected());
             json.put("start", start.getSelected());
-            json.put("clockwise", isClockwise);
+            limits.save(json);
             return json;
         }
     }
@@ -958,45 +981,212 @@ public class GraphEditor extends Editor {
 
             this.window.add(new Label("Speed: ", ISpriteMain.getSkin()));
 
-            this.speedField = new TextField("1", ISpriteMain.getSkin());
+            this.speedField = createExpressionField("1");
             this.window.add(speedField);
         }
 
         @Override
-        public void tick(float step) {
-            nodes.get(inputs.get("Pose")).tick(step*evaluateExpression(speedField.getText()));
+        public String getTypeName() {
+            return "Playback Speed";
         }
 
         @Override
-        public String getTypeName() {
-            return "Playback Speed";
+        public JSONObject save() {
+            JSONObject json = super.save();
+            json.put("speed", speedField.getText());
+            return json;
+        }
+        @Override
+        public void load(JSONObject json) {
+            super.load(json);
+            this.speedField.setText(json.getString("speed"));
+        }
+    }
+
+    public class LayerBlendGraphNode extends GraphNode{
+        private final ArrayList<Layer> layers = new ArrayList<>();
+        public LayerBlendGraphNode() {
+            super("Layer Blend", "Applies weighted and masked layers over the base pose.", true);
+            addInput("Base");
+            TextButton addLayerButton = new TextButton("Add layer", ISpriteMain.getSkin());
+            addLayerButton.addListener(new ClickListener(){
+                @Override
+                public void clicked(InputEvent event, float x, float y) {
+                    addLayer(UUID.randomUUID());
+                    window.pack();
+                }
+            });
+            verticalGroup.addActor(addLayerButton);
+        }
+        private Layer addLayer(UUID id){
+            Layer layer = new Layer(id);
+            layers.add(layer);
+            graphChanged();
+            return layer;
         }
 
         @Override
-        public AnimatedSpritePose getOutputPose() {
-            return getInput("Pose");
+        public void refresh() {
+            for(Layer layer : layers){
+                for(SelectBox<UUID> bone : layer.mask){
+                    UUID selected = bone.getSelected();
+                    bone.setItems(ISpriteMain.getInstance().sprite.bones.keySet().toArray(UUID[]::new));
+                    if(selected != null && ISpriteMain.getInstance().sprite.bones.containsKey(selected))
+                        bone.setSelected(selected);
+                }
+            }
+        }
+
+        @Override
+        public String getTypeName() {
+            return "Layer Blend";
+        }
+
+        /**
+         * Numbers the layer inputs by their current position.
+         */
+        private void renumberLayers(){
+            for(int i = 0;i < layers.size();i++){
+                HorizontalGroup field = inputFields.get(layers.get(i).id.toString());
+                String name = "Layer " + (i+1);
+                field.setName(name);
+                ((Label) field.getChild(1)).setText(name);
+            }
         }
 
         @Override
         public JSONObject save() {
             JSONObject json = super.save();
-            json.put("speed", speedField.getText());
+            JSONArray layersJson = new JSONArray();
+            for(Layer layer : layers){
+                JSONObject layerJson = new JSONObject();
+                layerJson.put("id", layer.id.toString());
+                layerJson.put("weight", layer.weightField.getText());
+                layerJson.put("additive", layer.additive.isChecked());
+                JSONArray maskJson = new JSONArray();
+                for(UUID bone : layer.getMaskRoots()){
+                    maskJson.put(bone.toString());
+                }
+                layerJson.put("mask", maskJson);
+                layersJson.put(layerJson);
+            }
+            json.put("layers", layersJson);
             return json;
         }
         @Override
         public void load(JSONObject json) {
+            //inputs of the layers have to exist before they are connected
+            JSONArray layersJson = json.getJSONArray("layers");
+            for(int i = 0;i < layersJson.length();i++){
+                JSONObject layerJson = layersJson.getJSONObject(i);
+                Layer layer = addLayer(UUID.fromString(layerJson.getString("id")));
+                layer.weightField.setText(layerJson.getString("weight"));
+                layer.additive.setChecked(layerJson.getBoolean("additive"));
+                JSONArray maskJson = layerJson.getJSONArray("mask");
+                for(int j = 0;j < maskJson.length();j++){
+                    layer.addMaskBone().setSelected(UUID.fromString(maskJson.getString(j)));
+                }
+            }
             super.load(json);
-            this.speedField.setText(json.getString("speed"));
+        }
+
+        private class Layer {
+            public final UUID id;
+            public final TextField weightField;
+            public final CheckBox additive;
+            public final ArrayList<SelectBox<UUID>> mask = new ArrayList<>();
+            private final VerticalGroup maskGroup = new VerticalGroup();
+            private final HorizontalGroup settingsGroup = new HorizontalGroup();
+            public Layer(UUID id) {
+                this.id = id;
+                String input = id.toString();
+                addInput(input, "Layer " + (layers.size()+1));
+                this.weightField = createExpressionField("1");
+                this.additive = new CheckBox("additive", ISpriteMain.getSkin());
+                additive.addListener(new ChangeListener() {
+                    @Override
+                    public void changed(ChangeEvent changeEvent, Actor actor) {
+                        graphChanged();
+                    }
+                });
+                TextButton addMaskButton = new TextButton("Mask +", ISpriteMain.getSkin());
+                addMaskButton.addListener(new ClickListener(){
+                    @Override
+                    public void clicked(InputEvent event, float x, float y) {
+                        addMaskBone();
+                        graphChanged();
+                        window.pack();
+                    }
+                });
+                TextButton removeButton = new TextButton("X", ISpriteMain.getSkin());
+                removeButton.addListener(new ClickListener(){
+                    @Override
+                    public void clicked(InputEvent event, float x, float y) {
+                        layers.remove(Layer.this);
+                        verticalGroup.removeActor(inputFields.remove(input));
+                        verticalGroup.removeActor(settingsGroup);
+                        verticalGroup.removeActor(maskGroup);
+                        inputRegions.remove(input);
+                        inputActors.remove(input);
+                        inputs.remove(input);
+                        renumberLayers();
+                        graphChanged();
+                        window.pack();
+                    }
+                });
+                settingsGroup.addActor(new Label("weight: ", ISpriteMain.getSkin()));
+                settingsGroup.addActor(weightField);
+                settingsGroup.addActor(additive);
+                settingsGroup.addActor(addMaskButton);
+                settingsGroup.addActor(removeButton);
+                maskGroup.columnLeft();
+                verticalGroup.addActor(settingsGroup);
+                verticalGroup.addActor(maskGroup);
+            }
+            public SelectBox<UUID> addMaskBone(){
+                SelectBox<UUID> bone = new SelectBox<>(ISpriteMain.getSkin()){
+                    @Override
+                    public String toString(UUID object) {
+                        return ISpriteMain.getInstance().sprite.bones.get(object).name;
+                    }
+                };
+                bone.setItems(ISpriteMain.getInstance().sprite.bones.keySet().toArray(UUID[]::new));
+                bone.addListener(new ChangeListener() {
+                    @Override
+                    public void changed(ChangeEvent changeEvent, Actor actor) {
+                        graphChanged();
+                    }
+                });
+                HorizontalGroup boneGroup = new HorizontalGroup();
+                TextButton removeButton = new TextButton("X", ISpriteMain.getSkin());
+                removeButton.addListener(new ClickListener(){
+                    @Override
+                    public void clicked(InputEvent event, float x, float y) {
+                        mask.remove(bone);
+                        maskGroup.removeActor(boneGroup);
+                        graphChanged();
+                        window.pack();
+                    }
+                });
+                boneGroup.addActor(new Label("mask: ", ISpriteMain.getSkin()));
+                boneGroup.addActor(bone);
+                boneGroup.addActor(removeButton);
+                maskGroup.addActor(boneGroup);
+                mask.add(bone);
+                return bone;
+            }
+            /**
+             * @return selected bones whose subtrees the layer affects, empty for the whole skeleton
+             */
+            public UUID[] getMaskRoots(){
+                return mask.stream().map(SelectBox::getSelected).filter(Objects::nonNull).toArray(UUID[]::new);
+            }
         }
     }
 
     public class StateGraphNode extends GraphNode {
         public final AnimationStateMachine stateMachine;
 
-        public UUID currentState;
-        public int transitionId;
-        public float transitionTime;
-
         public StateGraphNode() {
             super("State Machine", "Carries internal state.", true);
             this.stateMachine = new AnimationStateMachine();
@@ -1008,92 +1198,14 @@ public class GraphEditor extends Editor {
                 }
             });
             this.verticalGroup.addActor(enterButton);
-            reset();
             refresh();
         }
 
-        @Override
-        public void reset() {
-            this.currentState = stateMachine.startState;
-            this.transitionId = -1;
-            if(getInputByState(currentState) == null)
-                return;
-            getInputByState(currentState).reset();
-        }
-
-        @Override
-        public void tick(float step) {
-            if(getInputByState(currentState) == null)
-                return;
-            getInputByState(currentState).tick(step);
-            if(transitionId != -1){
-                AnimationStateMachine.StateTransition transition = stateMachine.states.get(currentState).transitions.get(transitionId);
-                transitionTime += step;
-                if(transitionTime > transition.blendTime){
-                    currentState = transition.target;
-                    transitionId = -1;
-                }
-            } else {
-                ArrayList<AnimationStateMachine.StateTransition> transitions = stateMachine.states.get(currentState).transitions;
-                for(int i = 0;i < transitions.size();i++){
-                    AnimationStateMachine.StateTransition transition = transitions.get(i);
-                    boolean failed = false;
-                    for(AnimationStateMachine.TransitionCondition condition : transition.conditions){
-                        if(condition.propertyId == null || properties.get(condition.propertyId) == null || !condition.comparator.passes(properties.get(condition.propertyId).value, condition.value)){
-                            failed = true;
-                            break;
-                        }
-                    }
-                    if(transition.requireFinished && !getInputByState(currentState).isFinished())
-                        failed = true;
-                    if(!failed){
-                        transitionId = i;
-                        transitionTime = 0;
-                        if(getInputByState(transition.target) == null)
-                            return;
-                        if(transition.resets)
-                            getInputByState(transition.target).reset();
-                        break;
-                    }
-                }
-            }
-        }
-
-        @Override
-        public boolean isFinished() {
-            if(getInputByState(currentState) == null)
-                return true;
-            return getInputByState(currentState).isFinished() && stateMachine.states.get(currentState).endState;
-        }
-
         @Override
         public String getTypeName() {
             return "State Machine";
         }
 
-        @Override
-        public AnimatedSpritePose getOutputPose() {
-            GraphNode first = getInputByState(currentState);
-            if(first == null)
-                return BoneEditor.EMPTY_POSE;
-            if(transitionId != -1){
-                AnimationStateMachine.StateTransition transition = stateMachine.states.get(currentState).transitions.get(transitionId);
-                GraphNode second = getInputByState(transition.target);
-                if(second == null)
-                    return first.getOutputPose();
-                return first.getOutputPose().lerp(second.getOutputPose(), transition.interpolationFunction.function.apply(transitionTime/transition.blendTime));
-            } else {
-                return first.getOutputPose();
-            }
-        }
-
-        public GraphNode getInputByState(UUID state) {
-            UUID id = inputs.get(state.toString());
-            if(id != null)
-                return nodes.get(id);
-            return null;
-        }
-
         @Override
         public JSONObject save() {
             JSONObject json = super.save();
@@ -1117,6 +1229,7 @@ public class GraphEditor extends Editor {
                 addInput(entry.getKey().toString(), entry.getValue().name);
             }
             window.pack();
+            graphChanged();
         }
     }
 
@@ -1129,6 +1242,8 @@ public class GraphEditor extends Editor {
         for(GraphNode node : nodes.values()){
             node.refresh();
         }
+        //animations and state machines may have been edited in their own editors
+        graphChanged();
     }
 
     @Override
@@ -1157,14 +1272,14 @@ public class GraphEditor extends Editor {
 
     public class AnimationPlayerWidget extends Widget{
         private final PolygonSpriteBatch polygonSpriteBatch;
-        public AnimatedSpritePose pose;
+        public PoseBuffer pose;
         public Vector2 offset;
         public float zoom;
         private Texture background;
         public AnimationPlayerWidget() {
             this.background = new Texture("background.png");
             this.polygonSpriteBatch = new PolygonSpriteBatch();
-            this.pose = BoneEditor.EMPTY_POSE;
+            this.pose = new PoseBuffer(0);
             this.offset = new Vector2(0, 0);
             addListener(new InputListener(){
                 @Override
@@ -1222,17 +1337,23 @@ public class GraphEditor extends Editor {
             return super.remove();
         }
     }
-    public float evaluateExpression(String expression){
-        try {
-            ExpressionBuilder builder = new ExpressionBuilder(expression);
-            builder.variables(properties.values().stream().map(p -> p.name).toArray(String[]::new));
-            Expression e = builder.build();
-            for (InputProperty prop : properties.values()) {
-                e.setVariable(prop.name, prop.value);
+    /**
+     * Text field for an expression, the graph only changes once the text is committed by enter or moving the focus away,
+     * so intermediate texts are not compiled.
+     */
+    public TextField createExpressionField(String text){
+        TextField field = new TextField(text, ISpriteMain.getSkin());
+        field.setTextFieldListener((textField, c) -> {
+            if((c == '\r' || c == '\n') && textField.getStage() != null)
+                textField.getStage().setKeyboardFocus(null);
+        });
+        field.addListener(new FocusListener() {
+            @Override
+            public void keyboardFocusChanged(FocusEvent event, Actor actor, boolean focused) {
+                if(!focused)
+                    graphChanged();
             }
-            return (float) e.evaluate();
-        } catch (Exception e){
-            return 0;
-        }
+        });
+        return field;
     }
 }
@@ -13,6 +13,10 @@ import games.spooky.gdx.nativefilechooser.NativeFileChooserConfiguration;
 import games.spooky.gdx.nativefilechooser.NativeFileChooserIntent;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /** {@link com.badlogic.gdx.ApplicationListener} implementation shared by all platforms. */
 public class ISpriteMain extends ApplicationAdapter {
     public AnimatedSprite sprite;
@@ -26,9 +30,18 @@ public class ISpriteMain extends ApplicationAdapter {
     private Vector2 lastMouse;
 
     public final NativeFileChooser fileChooser;
+    private final ExecutorService ioExecutor;
+    private volatile String ioTask;
+    private volatile float ioProgress;
+    private String ioError;
 
     public ISpriteMain(NativeFileChooser fileChooser) {
         this.fileChooser = fileChooser;
+        this.ioExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ISprite IO");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     @Override
@@ -39,6 +52,7 @@ public class ISpriteMain extends ApplicationAdapter {
         bone2.baseTransform.translation.set(0, 200);
         AnimatedSpriteBone bone3 = this.sprite.addChildNodeTo(bone2);
         bone3.baseTransform.translation.set(200, 0);
+        this.sprite.markModified();
         this.animation = new SpriteAnimation();
         this.animation.boneTracks.put(bone2.id, new AnimationTrack());
         this.animation.boneTracks.get(bone2.id).rotations.addKeyframe(0, 0f, EInterpolationFunction.Linear);
@@ -82,6 +96,8 @@ public class ISpriteMain extends ApplicationAdapter {
     }
 
     public void save() {
+        if(ioTask != null)
+            return;
         NativeFileChooserConfiguration conf = new NativeFileChooserConfiguration();
         conf.mimeFilter = "application/ispr";
         conf.intent = NativeFileChooserIntent.SAVE;
@@ -90,10 +106,7 @@ public class ISpriteMain extends ApplicationAdapter {
         fileChooser.chooseFile(conf, new NativeFileChooserCallback() {
             @Override
             public void onFileChosen(FileHandle fileHandle) {
-                JSONObject project = new JSONObject();
-                project.put("sprite", sprite.save());
-                project.put("graph", graphEditor.save());
-                fileHandle.writeBytes(project.toString(4).getBytes(), false);
+                Gdx.app.postRunnable(() -> saveInBackground(fileHandle.file()));
             }
             @Override
             public void onCancellation() {
@@ -101,12 +114,14 @@ public class ISpriteMain extends ApplicationAdapter {
             }
             @Override
             public void onError(Exception e) {
-                e.printStackTrace();
+                Gdx.app.postRunnable(() -> ioError = "Choosing file failed: " + e.getMessage());
             }
         });
     }
 
     public void load() {
+        if(ioTask != null)
+            return;
         NativeFileChooserConfiguration conf = new NativeFileChooserConfiguration();
         conf.mimeFilter = "application/ispr";
         conf.intent = NativeFileChooserIntent.OPEN;
@@ -115,10 +130,7 @@ public class ISpriteMain extends ApplicationAdapter {
         fileChooser.chooseFile(conf, new NativeFileChooserCallback() {
             @Override
             public void onFileChosen(FileHandle fileHandle) {
-                JSONObject project = new JSONObject(fileHandle.readString());
-                sprite.load(project.getJSONObject("sprite"));
-                graphEditor.load(project.getJSONObject("graph"));
-                setEditor(new BoneEditor());
+                Gdx.app.postRunnable(() -> loadInBackground(fileHandle.file()));
             }
             @Override
             public void onCancellation() {
@@ -126,11 +138,97 @@ public class ISpriteMain extends ApplicationAdapter {
             }
             @Override
             public void onError(Exception e) {
-                e.printStackTrace();
+                Gdx.app.postRunnable(() -> ioError = "Choosing file failed: " + e.getMessage());
             }
         });
     }
 
+    /**
+     * Snapshots the project on the render thread and writes it on the io thread. If writing fails the previous file is
+     * kept and the error is shown by the editor.
+     */
+    public void saveInBackground(File file) {
+        if(ioTask != null)
+            return;
+        AnimatedSprite snapshot = sprite.snapshot();
+        JSONObject graph = graphEditor.save();
+        startIoTask("Saving " + file.getName());
+        ioExecutor.execute(() -> {
+            try {
+                ProjectFile.write(file, snapshot, graph, progress -> ioProgress = (float) progress);
+            } catch (Exception e) {
+                Gdx.app.postRunnable(() -> failIoTask(e));
+                return;
+            }
+            Gdx.app.postRunnable(this::finishIoTask);
+        });
+    }
+    /**
+     * Reads and decodes the project on the io thread, textures are then uploaded one per frame on the render thread
+     * before the loaded project replaces the current one.
+     */
+    public void loadInBackground(File file) {
+        if(ioTask != null)
+            return;
+        startIoTask("Loading " + file.getName());
+        ioExecutor.execute(() -> {
+            AnimatedSprite loaded = new AnimatedSprite();
+            JSONObject graph;
+            try {
+                graph = ProjectFile.read(file, loaded, false, progress -> ioProgress = (float) progress*0.9f);
+            } catch (Exception e) {
+                Gdx.app.postRunnable(() -> failIoTask(e));
+                return;
+            }
+            Gdx.app.postRunnable(new Runnable() {
+                private int uploaded = 0;
+                @Override
+                public void run() {
+                    if(uploaded < loaded.images.size()){
+                        loaded.images.get(uploaded++).uploadTexture();
+                        ioProgress = 0.9f + 0.1f*uploaded/loaded.images.size();
+                        Gdx.app.postRunnable(this);
+                        return;
+                    }
+                    sprite.replaceWith(loaded);
+                    graphEditor.load(graph);
+                    setEditor(new BoneEditor());
+                    finishIoTask();
+                }
+            });
+        });
+    }
+    private void startIoTask(String name) {
+        this.ioProgress = 0;
+        this.ioTask = name;
+        this.ioError = null;
+    }
+    private void finishIoTask() {
+        this.ioTask = null;
+    }
+    private void failIoTask(Exception e) {
+        this.ioError = ioTask + " failed: " + (e.getMessage() == null ? e.toString() : e.getMessage());
+        this.ioTask = null;
+    }
+    /**
+     * Description of the running save or load, null when idle.
+     */
+    public String getIoTask() {
+        return ioTask;
+    }
+    public float getIoProgress() {
+        return ioProgress;
+    }
+    /**
+     * Error of the last failed save or load until it is dismissed, null if there is none. Only used on the render thread.
+     */
+    public String getIoError() {
+        return ioError;
+    }
+    public void dismissIoError() {
+        this.ioError = null;
+    }
+
     @Override
     public void resize(int width, int height) {
         super.resize(width, height);
@@ -139,6 +237,7 @@ public class ISpriteMain extends ApplicationAdapter {
 
     @Override
     public void dispose() {
+        ioExecutor.shutdown();
         editor.dispose();
     }
 
@@ -0,0 +1,321 @@
+package com.github.bitsky;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector2;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Mutable counterpart of {@link AnimatedSpritePose} stored in dense arrays indexed by {@link AnimatedSpriteBone#index}.
+ * A channel missing from {@link #mask} behaves like a null field of {@link Transform}.
+ */
+public class PoseBuffer {
+    public static final byte TRANSLATION = 1;
+    public static final byte ROTATION = 2;
+    public static final byte SCALE = 4;
+    public static final byte ALL = TRANSLATION | ROTATION | SCALE;
+
+    public float[] tx;
+    public float[] ty;
+    public float[] rot;
+    public float[] scale;
+    public byte[] mask;
+    private int capacity;
+
+    public PoseBuffer(int capacity) {
+        this.capacity = 0;
+        this.tx = new float[0];
+        this.ty = new float[0];
+        this.rot = new float[0];
+        this.scale = new float[0];
+        this.mask = new byte[0];
+        ensureCapacity(capacity);
+    }
+    public int getCapacity(){
+        return capacity;
+    }
+    public void ensureCapacity(int capacity){
+        if(capacity <= this.capacity)
+            return;
+        if(capacity > mask.length){
+            int length = Math.max(capacity, mask.length*2);
+            tx = Arrays.copyOf(tx, length);
+            ty = Arrays.copyOf(ty, length);
+            rot = Arrays.copyOf(rot, length);
+            scale = Arrays.copyOf(scale, length);
+            mask = Arrays.copyOf(mask, length);
+        }
+        Arrays.fill(mask, this.capacity, capacity, (byte) 0);
+        this.capacity = capacity;
+    }
+    public void clear(){
+        Arrays.fill(mask, 0, capacity, (byte) 0);
+    }
+    public boolean has(int bone, byte channel){
+        return (mask[bone] & channel) != 0;
+    }
+    public void setTranslation(int bone, float x, float y){
+        tx[bone] = x;
+        ty[bone] = y;
+        mask[bone] |= TRANSLATION;
+    }
+    public void setRotation(int bone, float rotation){
+        rot[bone] = rotation;
+        mask[bone] |= ROTATION;
+    }
+    public void setScale(int bone, float scale){
+        this.scale[bone] = scale;
+        mask[bone] |= SCALE;
+    }
+    public void set(int bone, Transform transform){
+        mask[bone] = 0;
+        if(transform.translation != null)
+            setTranslation(bone, transform.translation.x, transform.translation.y);
+        if(transform.rotation != null)
+            setRotation(bone, transform.rotation);
+        if(transform.scale != null)
+            setScale(bone, transform.scale);
+    }
+    public void copyFrom(PoseBuffer other){
+        ensureCapacity(other.capacity);
+        System.arraycopy(other.tx, 0, tx, 0, other.capacity);
+        System.arraycopy(other.ty, 0, ty, 0, other.capacity);
+        System.arraycopy(other.rot, 0, rot, 0, other.capacity);
+        System.arraycopy(other.scale, 0, scale, 0, other.capacity);
+        System.arraycopy(other.mask, 0, mask, 0, other.capacity);
+        Arrays.fill(mask, other.capacity, capacity, (byte) 0);
+    }
+
+    /**
+     * Same as {@link AnimatedSpritePose#lerp(AnimatedSpritePose, float)}, out may be this or other.
+     */
+    public void lerpInto(PoseBuffer other, float v, PoseBuffer out){
+        int n = prepare(other, out);
+        for(int i = 0;i < n;i++){
+            byte a = mask[i];
+            byte b = other.mask[i];
+            byte both = (byte) (a & b);
+            float x = (a & TRANSLATION) != 0 ? tx[i] : other.tx[i];
+            float y = (a & TRANSLATION) != 0 ? ty[i] : other.ty[i];
+            float r = (a & ROTATION) != 0 ? rot[i] : other.rot[i];
+            float s = (a & SCALE) != 0 ? scale[i] : other.scale[i];
+            if((both & TRANSLATION) != 0){
+                x += (other.tx[i]-x)*v;
+                y += (other.ty[i]-y)*v;
+            }
+            if((both & ROTATION) != 0)
+                r = MathUtils.lerpAngle(r, other.rot[i], v);
+            if((both & SCALE) != 0)
+                s = MathUtils.lerp(s, other.scale[i], v);
+            out.tx[i] = x;
+            out.ty[i] = y;
+            out.rot[i] = r;
+            out.scale[i] = s;
+            out.mask[i] = (byte) (a | b);
+        }
+    }
+
+    /**
+     * Same as {@link AnimatedSpritePose#add(AnimatedSpritePose)}, out may be this or other.
+     */
+    public void addInto(PoseBuffer other, PoseBuffer out){
+        int n = prepare(other, out);
+        for(int i = 0;i < n;i++){
+            byte a = mask[i];
+            byte b = other.mask[i];
+            float x = 0, y = 0, r = 0, s = 0;
+            if((a & TRANSLATION) != 0){
+                x = tx[i];
+                y = ty[i];
+            }
+            if((b & TRANSLATION) != 0){
+                x += other.tx[i];
+                y += other.ty[i];
+            }
+            if((a & ROTATION) != 0)
+                r = rot[i];
+            if((b & ROTATION) != 0)
+                r += other.rot[i];
+            if((a & SCALE) != 0)
+                s = scale[i];
+            if((b & SCALE) != 0)
+                s += other.scale[i];
+            out.tx[i] = x;
+            out.ty[i] = y;
+            out.rot[i] = r;
+            out.scale[i] = s;
+            out.mask[i] = (byte) (a | b);
+        }
+    }
+
+    /**
+     * Same as {@link AnimatedSpritePose#multiply(float)}, out may be this.
+     */
+    public void scaleInto(float s, PoseBuffer out){
+        out.ensureCapacity(capacity);
+        for(int i = 0;i < capacity;i++){
+            out.tx[i] = tx[i]*s;
+            out.ty[i] = ty[i]*s;
+            out.rot[i] = rot[i]*s;
+            out.scale[i] = scale[i]*s;
+            out.mask[i] = mask[i];
+        }
+        Arrays.fill(out.mask, capacity, out.capacity, (byte) 0);
+    }
+    /**
+     * Applies layers over this pose in one pass over the bones, layer l weighted by weights[l] times boneWeights[l][bone]
+     * or weights[l] alone if boneWeights[l] is null. Override layers blend towards their channels like {@link #lerpInto},
+     * additive layers add their weighted channels. Channels missing from this pose start from the base transforms of sprite,
+     * out may be this.
+     */
+    public void blendLayers(AnimatedSprite sprite, PoseBuffer[] layers, float[] weights, boolean[] additive, float[][] boneWeights, int count, PoseBuffer out){
+        int n = sprite.getBoneCapacity();
+        ensureCapacity(n);
+        out.ensureCapacity(n);
+        for(int l = 0;l < count;l++){
+            layers[l].ensureCapacity(n);
+        }
+        Arrays.fill(out.mask, n, out.capacity, (byte) 0);
+        for(int i = 0;i < n;i++){
+            AnimatedSpriteBone bone = sprite.getBone(i);
+            byte m = mask[i];
+            if(bone == null){
+                out.mask[i] = 0;
+                continue;
+            }
+            Transform base = bone.baseTransform;
+            float x = (m & TRANSLATION) != 0 ? tx[i] : base.translation.x;
+            float y = (m & TRANSLATION) != 0 ? ty[i] : base.translation.y;
+            float r = (m & ROTATION) != 0 ? rot[i] : base.rotation;
+            float s = (m & SCALE) != 0 ? scale[i] : base.scale;
+            for(int l = 0;l < count;l++){
+                PoseBuffer layer = layers[l];
+                byte lm = layer.mask[i];
+                float w = boneWeights[l] == null ? weights[l] : weights[l]*boneWeights[l][i];
+                if(lm == 0 || w == 0)
+                    continue;
+                if(additive[l]){
+                    if((lm & TRANSLATION) != 0){
+                        x += layer.tx[i]*w;
+                        y += layer.ty[i]*w;
+                    }
+                    if((lm & ROTATION) != 0)
+                        r += layer.rot[i]*w;
+                    if((lm & SCALE) != 0)
+                        s += layer.scale[i]*w;
+                } else {
+                    if((lm & TRANSLATION) != 0){
+                        x += (layer.tx[i]-x)*w;
+                        y += (layer.ty[i]-y)*w;
+                    }
+                    if((lm & ROTATION) != 0)
+                        r = MathUtils.lerpAngle(r, layer.rot[i], w);
+                    if((lm & SCALE) != 0)
+                        s += (layer.scale[i]-s)*w;
+                }
+                m |= lm;
+            }
+            out.tx[i] = x;
+            out.ty[i] = y;
+            out.rot[i] = r;
+            out.scale[i] = s;
+            out.mask[i] = m;
+        }
+    }
+    private int prepare(PoseBuffer other, PoseBuffer out){
+        int n = Math.max(capacity, other.capacity);
+        ensureCapacity(n);
+        other.ensureCapacity(n);
+        out.ensureCapacity(n);
+        Arrays.fill(out.mask, n, out.capacity, (byte) 0);
+        return n;
+    }
+
+    /**
+     * Composes this pose over the base transforms of sprite in one pass over {@link AnimatedSprite#getBoneOrder()},
+     * writing world transforms of every bone into out. Same result as {@link AnimatedSpritePose#getBoneTransforms(AnimatedSprite, Transform)}
+     * with identity root transform, out must not be this.
+     */
+    public void computeWorldInto(AnimatedSprite sprite, PoseBuffer out){
+        int capacity = sprite.getBoneCapacity();
+        ensureCapacity(capacity);
+        out.ensureCapacity(capacity);
+        out.clear();
+        int[] parents = sprite.getParentIndices();
+        for(int index : sprite.getBoneOrder()){
+            composeWorld(sprite, index, parents[index], out);
+        }
+    }
+    /**
+     * Writes world transforms of bone and its ancestors into out like {@link #computeWorldInto}, leaving all other bones
+     * of out untouched, so finding a few bones costs the depth of their bones instead of the size of the skeleton.
+     */
+    public void computeWorldOf(AnimatedSprite sprite, int bone, PoseBuffer out){
+        int capacity = sprite.getBoneCapacity();
+        ensureCapacity(capacity);
+        out.ensureCapacity(capacity);
+        computeAncestorsWorld(sprite.getParentIndices(), sprite, bone, out);
+    }
+    private void computeAncestorsWorld(int[] parents, AnimatedSprite sprite, int bone, PoseBuffer out){
+        int parent = parents[bone];
+        if(parent != -1)
+            computeAncestorsWorld(parents, sprite, parent, out);
+        composeWorld(sprite, bone, parent, out);
+    }
+    /**
+     * Writes the world transform of bone into out, the world transform of its parent has to be in out already.
+     */
+    private void composeWorld(AnimatedSprite sprite, int index, int parent, PoseBuffer out){
+        Transform base = sprite.getBone(index).baseTransform;
+        byte m = mask[index];
+        float x = (m & TRANSLATION) != 0 ? tx[index] : base.translation.x;
+        float y = (m & TRANSLATION) != 0 ? ty[index] : base.translation.y;
+        float r = (m & ROTATION) != 0 ? rot[index] : base.rotation;
+        float s = (m & SCALE) != 0 ? scale[index] : base.scale;
+        if(parent != -1){
+            float parentRotation = out.rot[parent];
+            float parentScale = out.scale[parent];
+            float cos = (float) Math.cos(parentRotation);
+            float sin = (float) Math.sin(parentRotation);
+            float rx = x*cos - y*sin;
+            float ry = x*sin + y*cos;
+            x = out.tx[parent] + rx*parentScale;
+            y = out.ty[parent] + ry*parentScale;
+            r += parentRotation;
+            s *= parentScale;
+        }
+        out.tx[index] = x;
+        out.ty[index] = y;
+        out.rot[index] = r;
+        out.scale[index] = s;
+        out.mask[index] = ALL;
+    }
+
+    public void readPose(AnimatedSprite sprite, AnimatedSpritePose pose){
+        ensureCapacity(sprite.getBoneCapacity());
+        clear();
+        for(Map.Entry<UUID, Transform> entry : pose.boneTransforms.entrySet()){
+            AnimatedSpriteBone bone = sprite.bones.get(entry.getKey());
+            if(bone != null)
+                set(bone.index, entry.getValue());
+        }
+    }
+    public AnimatedSpritePose toPose(AnimatedSprite sprite){
+        HashMap<UUID, Transform> transforms = new HashMap<>();
+        int n = Math.min(capacity, sprite.getBoneCapacity());
+        for(int i = 0;i < n;i++){
+            AnimatedSpriteBone bone = sprite.getBone(i);
+            if(bone == null || mask[i] == 0)
+                continue;
+            transforms.put(bone.id, new Transform(
+                has(i, TRANSLATION) ? new Vector2(tx[i], ty[i]) : null,
+                has(i, ROTATION) ? rot[i] : null,
+                has(i, SCALE) ? scale[i] : null
+            ));
+        }
+        return new AnimatedSpritePose(transforms);
+    }
+}
@@ -0,0 +1,309 @@
+package com.github.bitsky;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.math.Vector2;
+import org.json.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Binary .ispr container. The header holds magic, format version and a table of tagged chunks, images are stored as
+ * their raw png bytes and the graph as {@link BinaryJson}. Files are read into a single buffer, files without the
+ * magic are read as the old json format and files named *.json are also written as json. Files are replaced only
+ * after they were written completely.
+ */
+public class ProjectFile {
+    public static final int MAGIC = tag("ISPR");
+    public static final int VERSION = 1;
+    public static final int BONES = tag("BONE");
+    public static final int IMAGES = tag("IMGS");
+    public static final int BLOBS = tag("BLOB");
+    public static final int GRAPH = tag("GRPH");
+
+    public static void write(File file, AnimatedSprite sprite, JSONObject graph) throws IOException {
+        write(file, sprite, graph, progress -> {});
+    }
+    /**
+     * @param progress receives values from 0 to 1, called on the writing thread
+     */
+    public static void write(File file, AnimatedSprite sprite, JSONObject graph, DoubleConsumer progress) throws IOException {
+        if(file.getName().toLowerCase().endsWith(".json")){
+            writeJson(file, sprite, graph);
+            progress.accept(1);
+            return;
+        }
+        HashMap<UUID, Integer> boneIndices = new HashMap<>();
+        ArrayList<byte[]> blobs = new ArrayList<>();
+        HashMap<Long, ArrayList<Integer>> blobsByHash = new HashMap<>();
+        int[] tags = {BONES, IMAGES, BLOBS, GRAPH};
+        byte[][] chunks = new byte[4][];
+        chunks[0] = writeBones(sprite, boneIndices);
+        chunks[1] = writeImages(sprite, boneIndices, blobs, blobsByHash);
+        chunks[2] = writeBlobs(blobs);
+        progress.accept(0.3);
+        chunks[3] = BinaryJson.encode(graph);
+        progress.accept(0.5);
+        Path temp = createTempFile(file);
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))){
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(chunks.length);
+            int offset = 12 + chunks.length*12;
+            for(int i = 0;i < chunks.length;i++){
+                out.writeInt(tags[i]);
+                out.writeInt(offset);
+                out.writeInt(chunks[i].length);
+                offset += chunks[i].length;
+            }
+            for(int i = 0;i < chunks.length;i++){
+                out.write(chunks[i]);
+                progress.accept(0.5 + 0.5*(i+1)/chunks.length);
+            }
+        } catch (IOException | RuntimeException e){
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        replace(temp, file);
+    }
+    public static void writeJson(File file, AnimatedSprite sprite, JSONObject graph) throws IOException {
+        JSONObject project = new JSONObject();
+        project.put("sprite", sprite.save());
+        project.put("graph", graph);
+        Path temp = createTempFile(file);
+        try {
+            Files.write(temp, project.toString(4).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException | RuntimeException e){
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        replace(temp, file);
+    }
+    /**
+     * Projects are written into a temporary file next to file first, so a failed save never leaves a truncated project.
+     */
+    private static Path createTempFile(File file) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        return Files.createTempFile(directory.toPath(), file.getName(), ".tmp");
+    }
+    private static void replace(Path temp, File file) throws IOException {
+        try {
+            try {
+                Files.move(temp, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e){
+                Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e){
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * Loads bones and images into sprite and returns the graph json for {@link GraphEditor#load(JSONObject)}.
+     */
+    public static JSONObject read(File file, AnimatedSprite sprite, boolean createTextures) throws IOException {
+        return read(file, sprite, createTextures, progress -> {});
+    }
+    /**
+     * @param progress receives values from 0 to 1, called on the reading thread
+     */
+    public static JSONObject read(File file, AnimatedSprite sprite, boolean createTextures, DoubleConsumer progress) throws IOException {
+        //read into the heap, a mapping would stay open until garbage collected and block saving over the file on Windows
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        if(buffer.limit() < 12 || buffer.getInt(0) != MAGIC){
+            JSONObject project = new JSONObject(StandardCharsets.UTF_8.decode(buffer).toString());
+            progress.accept(0.5);
+            sprite.load(project.getJSONObject("sprite"), createTextures);
+            progress.accept(1);
+            return project.getJSONObject("graph");
+        }
+        int version = buffer.getInt(4);
+        if(version > VERSION)
+            throw new IOException("Unsupported project version " + version);
+        int count = buffer.getInt(8);
+        HashMap<Integer, ByteBuffer> chunks = new HashMap<>();
+        for(int i = 0;i < count;i++){
+            int tag = buffer.getInt(12 + i*12);
+            int offset = buffer.getInt(16 + i*12);
+            int length = buffer.getInt(20 + i*12);
+            chunks.put(tag, buffer.duplicate().position(offset).limit(offset+length).slice());
+        }
+        ArrayList<AnimatedSpriteBone> bones = readBones(chunks.get(BONES), sprite);
+        sprite.images.clear();
+        readImages(chunks.get(IMAGES), chunks.get(BLOBS), bones, sprite, createTextures, progress);
+        JSONObject graph = BinaryJson.decode(chunks.get(GRAPH));
+        progress.accept(1);
+        return graph;
+    }
+
+    private static byte[] writeBones(AnimatedSprite sprite, HashMap<UUID, Integer> boneIndices) throws IOException {
+        int[] order = sprite.getBoneOrder();
+        for(int i = 0;i < order.length;i++){
+            boneIndices.put(sprite.getBone(order[i]).id, i);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(order.length);
+        out.writeInt(boneIndices.get(sprite.rootBone.id));
+        for(int index : order){
+            AnimatedSpriteBone bone = sprite.getBone(index);
+            out.writeLong(bone.id.getMostSignificantBits());
+            out.writeLong(bone.id.getLeastSignificantBits());
+            writeString(out, bone.name);
+            bone.baseTransform.write(out);
+            out.writeInt(Color.rgba8888(bone.color));
+            out.writeInt(bone.children.size());
+            for(UUID child : bone.children){
+                out.writeInt(boneIndices.get(child));
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+    private static ArrayList<AnimatedSpriteBone> readBones(ByteBuffer in, AnimatedSprite sprite){
+        int count = in.getInt();
+        int root = in.getInt();
+        ArrayList<AnimatedSpriteBone> bones = new ArrayList<>();
+        int[][] children = new int[count][];
+        for(int i = 0;i < count;i++){
+            AnimatedSpriteBone bone = new AnimatedSpriteBone(sprite, null);
+            bone.id = new UUID(in.getLong(), in.getLong());
+            bone.name = readString(in);
+            bone.baseTransform.read(in);
+            bone.color = new Color(in.getInt());
+            children[i] = new int[in.getInt()];
+            for(int j = 0;j < children[i].length;j++){
+                children[i][j] = in.getInt();
+            }
+            bones.add(bone);
+        }
+        for(int i = 0;i < count;i++){
+            for(int child : children[i]){
+                bones.get(i).children.add(bones.get(child).id);
+                bones.get(child).parent = bones.get(i).id;
+            }
+        }
+        sprite.setBones(bones, bones.get(root));
+        return bones;
+    }
+
+    private static byte[] writeImages(AnimatedSprite sprite, HashMap<UUID, Integer> boneIndices, ArrayList<byte[]> blobs, HashMap<Long, ArrayList<Integer>> blobsByHash) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(sprite.images.size());
+        for(VertexedImage image : sprite.images){
+            writeString(out, image.name);
+            image.transform.write(out);
+            out.writeInt(addBlob(image.encodeTexture(), image.getTextureHash(), blobs, blobsByHash));
+            out.writeInt(image.points.size());
+            for(VertexedImage.Vertex vertex : image.points){
+                out.writeFloat(vertex.position.x);
+                out.writeFloat(vertex.position.y);
+                int weights = 0;
+                for(UUID bone : vertex.weights.keySet()){
+                    if(boneIndices.containsKey(bone))
+                        weights++;
+                }
+                out.writeInt(weights);
+                for(Map.Entry<UUID, Float> entry : vertex.weights.entrySet()){
+                    Integer bone = boneIndices.get(entry.getKey());
+                    if(bone == null)
+                        continue;
+                    out.writeInt(bone);
+                    out.writeFloat(entry.getValue());
+                }
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+    private static void readImages(ByteBuffer in, ByteBuffer blobs, ArrayList<AnimatedSpriteBone> bones, AnimatedSprite sprite, boolean createTextures, DoubleConsumer progress){
+        int count = in.getInt();
+        for(int i = 0;i < count;i++){
+            VertexedImage image = new VertexedImage(null, readString(in));
+            image.transform.read(in);
+            int blob = in.getInt();
+            int points = in.getInt();
+            for(int j = 0;j < points;j++){
+                Vector2 position = new Vector2(in.getFloat(), in.getFloat());
+                HashMap<UUID, Float> weights = new HashMap<>();
+                int weightCount = in.getInt();
+                for(int k = 0;k < weightCount;k++){
+                    weights.put(bones.get(in.getInt()).id, in.getFloat());
+                }
+                image.points.add(new VertexedImage.Vertex(position, weights));
+            }
+            int offset = blobs.getInt(4 + blob*8);
+            int length = blobs.getInt(8 + blob*8);
+            byte[] bytes = new byte[length];
+            blobs.duplicate().position(offset).get(bytes);
+            image.setEncodedTexture(bytes, createTextures);
+            sprite.images.add(image);
+            progress.accept(0.9*(i+1)/count);
+        }
+    }
+
+    /**
+     * Returns the index of an equal blob written before or adds the blob.
+     */
+    private static int addBlob(byte[] blob, long hash, ArrayList<byte[]> blobs, HashMap<Long, ArrayList<Integer>> blobsByHash){
+        ArrayList<Integer> candidates = blobsByHash.computeIfAbsent(hash, h -> new ArrayList<>());
+        for(int candidate : candidates){
+            if(Arrays.equals(blobs.get(candidate), blob))
+                return candidate;
+        }
+        candidates.add(blobs.size());
+        blobs.add(blob);
+        return blobs.size()-1;
+    }
+    /**
+     * Blob count, offset and length of every blob relative to the chunk, then the blob bytes.
+     */
+    private static byte[] writeBlobs(ArrayList<byte[]> blobs) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(blobs.size());
+        int offset = 4 + blobs.size()*8;
+        for(byte[] blob : blobs){
+            out.writeInt(offset);
+            out.writeInt(blob.length);
+            offset += blob.length;
+        }
+        for(byte[] blob : blobs){
+            out.write(blob);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = (string == null ? "" : string).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    private static String readString(ByteBuffer in){
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    private static int tag(String name){
+        byte[] bytes = name.getBytes(StandardCharsets.US_ASCII);
+        return (bytes[0] << 24) | (bytes[1] << 16) | (bytes[2] << 8) | bytes[3];
+    }
+}
@@ -6,7 +6,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 
-public class SpriteAnimation {
+public class SpriteAnimation implements AnimationClip {
     public HashMap<UUID, AnimationTrack> boneTracks;
     public SpriteAnimation() {
         this.boneTracks = new HashMap<>();
@@ -18,6 +18,16 @@ public class SpriteAnimation {
         }
         return new AnimatedSpritePose(transforms);
     }
+    @Override
+    public void getPose(float time, AnimatedSprite sprite, PoseBuffer out){
+        out.ensureCapacity(sprite.getBoneCapacity());
+        out.clear();
+        for(Map.Entry<UUID, AnimationTrack> entry : boneTracks.entrySet()){
+            AnimatedSpriteBone bone = sprite.bones.get(entry.getKey());
+            if(bone != null)
+                entry.getValue().sampleInto(time, out, bone.index);
+        }
+    }
     public AnimationTrack getTrack(UUID id){
         if(!boneTracks.containsKey(id))
             boneTracks.put(id, new AnimationTrack());
@@ -39,18 +49,13 @@ public class SpriteAnimation {
             boneTracks.put(UUID.fromString(entry), animationTrack);
         }
     }
+    @Override
     public float getAnimationLength(){
         float maxLength = 0;
         for(AnimationTrack track : boneTracks.values()){
-            for(float time : track.translations.track.keySet()){
-                maxLength = Math.max(maxLength, time);
-            }
-            for(float time : track.rotations.track.keySet()){
-                maxLength = Math.max(maxLength, time);
-            }
-            for(float time : track.scales.track.keySet()){
-                maxLength = Math.max(maxLength, time);
-            }
+            maxLength = Math.max(maxLength, track.translations.getEndTime());
+            maxLength = Math.max(maxLength, track.rotations.getEndTime());
+            maxLength = Math.max(maxLength, track.scales.getEndTime());
         }
         return maxLength;
     }
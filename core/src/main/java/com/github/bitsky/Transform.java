@@ -4,6 +4,10 @@ import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector2;
 import org.json.JSONObject;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
 public class Transform {
     public Vector2 translation;
     public Float rotation;
@@ -16,6 +20,9 @@ public class Transform {
     public Transform(){
         this(null, null, null);
     }
+    public Transform cpy(){
+        return new Transform(translation==null?null:translation.cpy(), rotation, scale);
+    }
     public Transform lock(){
         return new Transform(this.translation!=null?this.translation:new Vector2(), this.rotation!=null?this.rotation:0, this.scale!=null?this.scale:1);
     }
@@ -69,4 +76,22 @@ public class Transform {
         if(json.has("scale"))
             this.scale = json.getFloat("scale");
     }
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeByte((translation != null ? 1 : 0) | (rotation != null ? 2 : 0) | (scale != null ? 4 : 0));
+        if(translation != null){
+            out.writeFloat(translation.x);
+            out.writeFloat(translation.y);
+        }
+        if(rotation != null)
+            out.writeFloat(rotation);
+        if(scale != null)
+            out.writeFloat(scale);
+    }
+    public void read(ByteBuffer in){
+        byte flags = in.get();
+        this.translation = (flags & 1) != 0 ? new Vector2(in.getFloat(), in.getFloat()) : null;
+        this.rotation = (flags & 2) != 0 ? in.getFloat() : null;
+        this.scale = (flags & 4) != 0 ? in.getFloat() : null;
+    }
 }
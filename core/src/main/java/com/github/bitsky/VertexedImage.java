@@ -24,9 +24,29 @@ import java.util.*;
 
 public class VertexedImage {
     public Texture texture;
+    /**
+     * Decoded pixels, only kept when the image was loaded without creating a texture.
+     */
+    public Pixmap pixmap;
+    private byte[] encodedTexture;
+    private long textureHash;
     public ArrayList<Vertex> points;
     public Transform transform;
     public String name;
+    private final PoseBuffer localPose = new PoseBuffer(0);
+    private final PoseBuffer worldPose = new PoseBuffer(0);
+    private float[] boneMatrices = new float[0];
+    public static final int MAX_INFLUENCES = 4;
+    private int[] influenceCounts = new int[0];
+    private int[] influenceBones = new int[0];
+    private float[] influenceWeights = new float[0];
+    private boolean skinningDirty = true;
+    private int skinningHierarchyVersion = -1;
+    private final DelaunayTriangulator triangulator = new DelaunayTriangulator();
+    private ShortArray triangles;
+    private PolygonRegion polygonRegion;
+    private float[] deformedVertices;
+    private boolean meshDirty = true;
     public VertexedImage(Texture texture, String name) {
         this.texture = texture;
         this.points = new ArrayList<>();
@@ -36,22 +56,7 @@ public class VertexedImage {
     public JSONObject save(){
         JSONObject json = new JSONObject();
         json.put("name", name);
-        if (!texture.getTextureData().isPrepared()) {
-            texture.getTextureData().prepare();
-        }
-        Pixmap pixmap = texture.getTextureData().consumePixmap();
-        PixmapIO.PNG writer = new PixmapIO.PNG((int)((float)(pixmap.getWidth() * pixmap.getHeight()) * 1.5F));
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        try {
-            writer.setFlipY(false);
-            writer.setCompression(-1);
-            writer.write(new BufferedOutputStream(outputStream), pixmap);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        } finally {
-            writer.dispose();
-        }
-        json.put("texture", Base64.getEncoder().encodeToString(outputStream.toByteArray()));
+        json.put("texture", Base64.getEncoder().encodeToString(encodeTexture()));
         json.put("transform", transform.save());
         JSONArray vertices = new JSONArray();
         for(Vertex vertex : points){
@@ -70,7 +75,71 @@ public class VertexedImage {
         json.put("points", vertices);
         return json;
     }
+    /**
+     * Encoded bytes of the image as imported or loaded, the pixels are only encoded to png again after {@link #markPixelsModified()}.
+     * The returned array is shared and must not be modified.
+     */
+    public byte[] encodeTexture(){
+        if(encodedTexture != null)
+            return encodedTexture;
+        Pixmap pixmap = this.pixmap;
+        if(pixmap == null){
+            if (!texture.getTextureData().isPrepared()) {
+                texture.getTextureData().prepare();
+            }
+            pixmap = texture.getTextureData().consumePixmap();
+        }
+        PixmapIO.PNG writer = new PixmapIO.PNG((int)((float)(pixmap.getWidth() * pixmap.getHeight()) * 1.5F));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            writer.setFlipY(false);
+            writer.setCompression(-1);
+            writer.write(new BufferedOutputStream(outputStream), pixmap);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            writer.dispose();
+        }
+        this.encodedTexture = outputStream.toByteArray();
+        this.textureHash = hash(encodedTexture);
+        return encodedTexture;
+    }
+    /**
+     * Hash of {@link #encodeTexture()}, equal images have equal hashes.
+     */
+    public long getTextureHash(){
+        encodeTexture();
+        return textureHash;
+    }
+    /**
+     * Must be called after drawing into the pixels of the texture or pixmap.
+     */
+    public void markPixelsModified(){
+        this.encodedTexture = null;
+    }
+    /**
+     * Decodes the image and keeps the encoded bytes, so saving does not encode the pixels again.
+     */
+    public void setEncodedTexture(byte[] bytes, boolean createTexture){
+        setPixmap(new Pixmap(bytes, 0, bytes.length), createTexture);
+        this.encodedTexture = bytes;
+        this.textureHash = hash(bytes);
+    }
+    private static long hash(byte[] bytes){
+        long hash = 0xcbf29ce484222325L;
+        for(byte b : bytes){
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
     public void load(JSONObject json){
+        load(json, true);
+    }
+    /**
+     * @param createTexture false to keep only the decoded {@link #pixmap}, so no GL context is needed
+     */
+    public void load(JSONObject json, boolean createTexture){
         this.name = json.getString("name");
         transform.load(json.getJSONObject("transform"));
         points.clear();
@@ -84,8 +153,44 @@ public class VertexedImage {
             JSONObject position = vertexJson.getJSONObject("position");
             points.add(new Vertex(new Vector2(position.getFloat("x"), position.getFloat("y")), weights));
         }
-        byte[] textureBytes = Base64.getDecoder().decode(json.getString("texture"));
-        this.texture = new Texture(new Pixmap(textureBytes, 0, textureBytes.length));
+        setEncodedTexture(Base64.getDecoder().decode(json.getString("texture")), createTexture);
+    }
+    /**
+     * Replaces the pixels of the image, see {@link #load(JSONObject, boolean)}.
+     */
+    public void setPixmap(Pixmap pixmap, boolean createTexture){
+        this.encodedTexture = null;
+        if(createTexture){
+            this.texture = new Texture(pixmap);
+            this.pixmap = null;
+        } else {
+            this.texture = null;
+            this.pixmap = pixmap;
+        }
+        invalidateMesh();
+    }
+    /**
+     * Creates the texture from {@link #pixmap}, must be called on the render thread.
+     */
+    public void uploadTexture(){
+        if(pixmap == null)
+            return;
+        this.texture = new Texture(pixmap);
+        this.pixmap = null;
+        invalidateMesh();
+    }
+    /**
+     * Copy without texture sharing the encoded bytes, see {@link AnimatedSprite#snapshot()}.
+     */
+    public VertexedImage snapshot(){
+        VertexedImage copy = new VertexedImage(null, name);
+        copy.transform = transform.cpy();
+        for(Vertex vertex : points){
+            copy.points.add(new Vertex(vertex.position.cpy(), new HashMap<>(vertex.weights)));
+        }
+        copy.encodedTexture = encodeTexture();
+        copy.textureHash = textureHash;
+        return copy;
     }
     public void addPoint(Vector2 position, AnimatedSpriteBone bone){
         HashMap<UUID,Float> weights = new HashMap<>();
@@ -93,12 +198,99 @@ public class VertexedImage {
         Vector3 vec = new Vector3(position.x, position.y, 0);
         vec.prj(getTransformMatrix().inv());
         this.points.add(new Vertex(new Vector2(vec.x, vec.y), weights));
+        invalidateMesh();
+    }
+    /**
+     * Must be called after changing {@link #points} or their positions.
+     */
+    public void invalidateMesh(){
+        meshDirty = true;
+        skinningDirty = true;
+    }
+    /**
+     * Must be called after changing weights of any vertex.
+     */
+    public void invalidateSkinning(){
+        skinningDirty = true;
+    }
+    /**
+     * Flattens vertex weights into {@link #MAX_INFLUENCES} bone index and weight slots per vertex,
+     * keeping the largest weights of existing bones and normalizing them to sum to one.
+     */
+    private void rebuildSkinning(AnimatedSprite sprite){
+        if(!skinningDirty && skinningHierarchyVersion == sprite.getHierarchyVersion() && influenceCounts.length == points.size())
+            return;
+        influenceCounts = new int[points.size()];
+        influenceBones = new int[points.size()*MAX_INFLUENCES];
+        influenceWeights = new float[points.size()*MAX_INFLUENCES];
+        for(int i = 0;i < points.size();i++){
+            int start = i*MAX_INFLUENCES;
+            int count = 0;
+            for(Map.Entry<UUID, Float> entry : points.get(i).weights.entrySet()){
+                AnimatedSpriteBone bone = sprite.bones.get(entry.getKey());
+                float weight = entry.getValue();
+                if(bone == null || weight <= 0)
+                    continue;
+                int j;
+                if(count < MAX_INFLUENCES)
+                    j = start+count++;
+                else if(weight > influenceWeights[start+MAX_INFLUENCES-1])
+                    j = start+MAX_INFLUENCES-1;
+                else
+                    continue;
+                while(j > start && influenceWeights[j-1] < weight){
+                    influenceBones[j] = influenceBones[j-1];
+                    influenceWeights[j] = influenceWeights[j-1];
+                    j--;
+                }
+                influenceBones[j] = bone.index;
+                influenceWeights[j] = weight;
+            }
+            float sum = 0;
+            for(int j = start;j < start+count;j++)
+                sum += influenceWeights[j];
+            for(int j = start;j < start+count;j++)
+                influenceWeights[j] /= sum;
+            influenceCounts[i] = count;
+        }
+        skinningDirty = false;
+        skinningHierarchyVersion = sprite.getHierarchyVersion();
+    }
+    private void rebuildMesh(){
+        if(!meshDirty && deformedVertices != null && deformedVertices.length == points.size()*2 && (polygonRegion != null || texture == null))
+            return;
+        float[] vertices = new float[points.size()*2];
+        for(int i = 0;i < points.size();i++){
+            vertices[(i*2)] = points.get(i).position.x;
+            vertices[(i*2)+1] = points.get(i).position.y;
+        }
+        triangles = new ShortArray(triangulator.computeTriangles(vertices, false));
+        polygonRegion = texture == null ? null : new PolygonRegion(new TextureRegion(texture), vertices, triangles.toArray());
+        deformedVertices = vertices;
+        meshDirty = false;
+    }
+    public ShortArray getTriangles(){
+        rebuildMesh();
+        return triangles;
+    }
+    /**
+     * Texture coordinates are computed from the undeformed points, draw only overwrites the vertex positions.
+     */
+    public PolygonRegion getPolygonRegion(){
+        rebuildMesh();
+        return polygonRegion;
+    }
+    public int getWidth(){
+        return texture != null ? texture.getWidth() : pixmap.getWidth();
+    }
+    public int getHeight(){
+        return texture != null ? texture.getHeight() : pixmap.getHeight();
     }
     public Matrix4 getTransformMatrix(){
         Matrix4 matrix = new Matrix4();
-        matrix.translate(transform.translation.x + texture.getWidth()/2f, transform.translation.y + texture.getHeight()/2f, 0);
+        matrix.translate(transform.translation.x + getWidth()/2f, transform.translation.y + getHeight()/2f, 0);
         matrix.rotateRad(Vector3.Z, transform.rotation);
-        matrix.translate(-texture.getWidth()/2f, -texture.getHeight()/2f, 0);
+        matrix.translate(-getWidth()/2f, -getHeight()/2f, 0);
         matrix.scl(transform.scale);
         return matrix;
     }
@@ -109,44 +301,76 @@ public class VertexedImage {
         spriteBatch.setTransformMatrix(new Matrix4());
     }
     public void draw(PolygonSpriteBatch polygonSpriteBatch, AnimatedSpritePose pose, float x, float y){
-        float[] vertices = new float[points.size()*2];
-        for(int i = 0;i < points.size();i++){
-            vertices[(i*2)] = points.get(i).position.x;
-            vertices[(i*2)+1] = points.get(i).position.y;
-        }
-        ShortArray indices = new DelaunayTriangulator().computeTriangles(vertices, true);
-        PolygonRegion polygonRegion = new PolygonRegion(new TextureRegion(texture), vertices, indices.shrink());
-
-        HashMap<UUID, Transform> defaultPositions = BoneEditor.EMPTY_POSE.getBoneTransforms(ISpriteMain.getInstance().sprite, new Transform().lock());
-        HashMap<UUID, Transform> posePositions = pose.getBoneTransforms(ISpriteMain.getInstance().sprite, new Transform().lock());
+        deform(ISpriteMain.getInstance().sprite, pose);
+        polygonSpriteBatch.draw(getPolygonRegion(), x, y);
+    }
+    public void draw(PolygonSpriteBatch polygonSpriteBatch, PoseBuffer pose, float x, float y){
+        deform(ISpriteMain.getInstance().sprite, pose);
+        polygonSpriteBatch.draw(getPolygonRegion(), x, y);
+    }
+    public float[] deform(AnimatedSprite sprite, AnimatedSpritePose pose){
+        localPose.readPose(sprite, pose);
+        return deform(sprite, localPose);
+    }
+    /**
+     * Skins all points into world space, two floats per point in the order of {@link #points}.
+     * The returned array is shared with the cached {@link PolygonRegion}.
+     */
+    public float[] deform(AnimatedSprite sprite, PoseBuffer pose){
+        rebuildMesh();
+        float[] vertices = deformedVertices;
+        float[] matrices = computeBoneMatrices(sprite, pose);
+        rebuildSkinning(sprite);
 
         Matrix4 transformMatrix = getTransformMatrix();
+        Vector3 vertex = new Vector3();
         for(int i = 0;i < points.size();i++){
-            Vector3 vertex = new Vector3(vertices[i*2], vertices[i*2+1], 0);
+            Vector2 position = points.get(i).position;
+            vertex.set(position.x, position.y, 0);
             vertex.prj(transformMatrix);
-            Vector2 outputVertex = new Vector2();
-            for(Map.Entry<UUID, Float> weightEntry : points.get(i).weights.entrySet()){
-                float angleDiff = posePositions.get(weightEntry.getKey()).rotation-defaultPositions.get(weightEntry.getKey()).rotation;
-                Vector2 positionDifference = new Vector2(vertex.x, vertex.y).sub(defaultPositions.get(weightEntry.getKey()).translation);
-                positionDifference.rotateRad(angleDiff);
-                outputVertex.add(positionDifference.add(posePositions.get(weightEntry.getKey()).translation).scl(weightEntry.getValue()));
+            float outputX = 0;
+            float outputY = 0;
+            int start = i*MAX_INFLUENCES;
+            int end = start+influenceCounts[i];
+            for(int j = start;j < end;j++){
+                int m = influenceBones[j]*6;
+                float weight = influenceWeights[j];
+                outputX += (matrices[m]*vertex.x + matrices[m+1]*vertex.y + matrices[m+2])*weight;
+                outputY += (matrices[m+3]*vertex.x + matrices[m+4]*vertex.y + matrices[m+5])*weight;
             }
-            vertices[i*2] = outputVertex.x;
-            vertices[i*2+1] = outputVertex.y;
+            vertices[i*2] = outputX;
+            vertices[i*2+1] = outputY;
         }
-        polygonSpriteBatch.draw(polygonRegion, x, y);
+        return vertices;
+    }
+    private float[] computeBoneMatrices(AnimatedSprite sprite, PoseBuffer pose){
+        if(boneMatrices.length < sprite.getBoneCapacity()*6)
+            boneMatrices = new float[sprite.getBoneCapacity()*6];
+        sprite.computeSkinningMatrices(pose, worldPose, boneMatrices);
+        return boneMatrices;
+    }
+    /**
+     * Number of influences of every point, bones and weights are stored in {@link #MAX_INFLUENCES} slots per point.
+     * The returned arrays are shared and must not be modified.
+     */
+    public int[] getInfluenceCounts(AnimatedSprite sprite){
+        rebuildSkinning(sprite);
+        return influenceCounts;
+    }
+    public int[] getInfluenceBones(AnimatedSprite sprite){
+        rebuildSkinning(sprite);
+        return influenceBones;
+    }
+    public float[] getInfluenceWeights(AnimatedSprite sprite){
+        rebuildSkinning(sprite);
+        return influenceWeights;
     }
     public void debugDraw(ShapeRenderer shapeRenderer){
         shapeRenderer.setTransformMatrix(getTransformMatrix());
         shapeRenderer.setColor(Color.PURPLE);
         shapeRenderer.rect(0, 0, texture.getWidth(), texture.getHeight());
 
-        float[] vertices = new float[points.size()*2];
-        for(int i = 0;i < points.size();i++){
-            vertices[(i*2)] = points.get(i).position.x;
-            vertices[(i*2)+1] = points.get(i).position.y;
-        }
-        ShortArray indices = new DelaunayTriangulator().computeTriangles(vertices, false);
+        ShortArray indices = getTriangles();
         shapeRenderer.setColor(Color.YELLOW);
         for(int i = 0;i < indices.size/3;i++){
             Vector2 v1 = points.get(indices.get(i*3)).position;
@@ -0,0 +1,15 @@
+package com.github.bitsky.runtime;
+
+import com.github.bitsky.AnimatedSprite;
+import com.github.bitsky.PoseBuffer;
+
+public class AddPoseNode extends NodeDefinition {
+    @Override
+    public String getTypeName() {
+        return "Add Pose";
+    }
+    @Override
+    public void evaluate(GraphInstance instance, GraphEvaluator evaluator, AnimatedSprite sprite, PoseBuffer out) {
+        getInputPose(evaluator, "Pose1").addInto(getInputPose(evaluator, "Pose2"), out);
+    }
+}
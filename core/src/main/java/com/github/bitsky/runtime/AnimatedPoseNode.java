@@ -0,0 +1,73 @@
+package com.github.bitsky.runtime;
+
+import com.github.bitsky.AnimatedSprite;
+import com.github.bitsky.AnimationClip;
+import com.github.bitsky.BakedClip;
+import com.github.bitsky.BinaryJson;
+import com.github.bitsky.CompressedClip;
+import com.github.bitsky.PoseBuffer;
+import com.github.bitsky.SpriteAnimation;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+
+public class AnimatedPoseNode extends NodeDefinition {
+    /**
+     * Keyframes, null if the project contains a baked or compressed clip, which are used instead.
+     */
+    public SpriteAnimation animation;
+    /**
+     * Sampled clip, {@link #animation} or the baked or compressed clip of the project,
+     * see {@link BakedClip#bakeGraph} and {@link CompressedClip#compressGraph}.
+     */
+    public AnimationClip clip;
+    public boolean isLooping;
+    private float length;
+    public AnimatedPoseNode() {
+        this.animation = new SpriteAnimation();
+        this.clip = animation;
+    }
+    @Override
+    public String getTypeName() {
+        return "Animated Pose";
+    }
+    @Override
+    public void load(JSONObject json) {
+        super.load(json);
+        this.isLooping = json.getBoolean("looping");
+        //keyframes next to a sampled clip are only kept for the editor
+        this.animation = null;
+        if(json.has("compressed")){
+            this.clip = CompressedClip.read(ByteBuffer.wrap(BinaryJson.getBytes(json, "compressed")));
+        } else if(json.has("baked")){
+            BakedClip baked = new BakedClip();
+            baked.load(json.getJSONObject("baked"));
+            this.clip = baked;
+        } else {
+            this.animation = new SpriteAnimation();
+            this.animation.load(json.getJSONObject("animation"));
+            this.clip = animation;
+        }
+        this.length = clip.getAnimationLength();
+    }
+    @Override
+    public void evaluate(GraphInstance instance, GraphEvaluator evaluator, AnimatedSprite sprite, PoseBuffer out) {
+        clip.getPose(instance.times[index], sprite, out);
+    }
+    @Override
+    public void tick(GraphInstance instance, float step) {
+        instance.times[index] += step;
+        if(isLooping && length > 0)
+            instance.times[index] %= length;
+    }
+    @Override
+    public void reset(GraphInstance instance) {
+        instance.times[index] = 0;
+    }
+    @Override
+    public boolean isFinished(GraphInstance instance) {
+        if(isLooping)
+            return false;
+        return instance.times[index] > length;
+    }
+}
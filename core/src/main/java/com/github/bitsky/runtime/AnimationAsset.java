@@ -0,0 +1,55 @@
+package com.github.bitsky.runtime;
+
+import com.github.bitsky.AnimatedSprite;
+import com.github.bitsky.ProjectFile;
+import com.github.bitsky.VertexedImage;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Everything of a project that does not change while playing: skeleton, graph with its animations and skinned meshes.
+ * One asset is shared by all {@link AnimationInstance}s of a character, which only hold their small playback state.
+ * The sprite must not be modified after the asset is created.
+ */
+public class AnimationAsset {
+    public final AnimatedSprite sprite;
+    public final GraphDefinition graph;
+    public final SkinnedMesh[] meshes;
+
+    public AnimationAsset(AnimatedSprite sprite, GraphDefinition graph) {
+        this.sprite = sprite;
+        this.graph = graph;
+        this.meshes = new SkinnedMesh[sprite.images.size()];
+        for(int i = 0;i < meshes.length;i++){
+            meshes[i] = new SkinnedMesh(sprite, sprite.images.get(i));
+        }
+        //build lazy caches now, so instances only ever read the sprite
+        sprite.getBoneOrder();
+        sprite.getParentIndices();
+        sprite.getBindInverses();
+    }
+    /**
+     * @param createTextures false to load without a GL context, see {@link VertexedImage#load(org.json.JSONObject, boolean)}
+     */
+    public static AnimationAsset load(File file, boolean createTextures) throws IOException {
+        AnimatedSprite sprite = new AnimatedSprite();
+        GraphDefinition graph = GraphDefinition.load(ProjectFile.read(file, sprite, createTextures));
+        return new AnimationAsset(sprite, graph);
+    }
+
+    public AnimationInstance createInstance(){
+        return new AnimationInstance(this);
+    }
+    public GraphEvaluator createEvaluator(){
+        return new GraphEvaluator(graph);
+    }
+    /**
+     * Ticks and evaluates the first count instances, all of them must belong to this asset.
+     */
+    public void update(AnimationInstance[] instances, int count, float step, GraphEvaluator evaluator){
+        for(int i = 0;i < count;i++){
+            instances[i].update(step, evaluator);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.github.bitsky.runtime;
+
+import com.github.bitsky.PoseBuffer;
+
+/**
+ * Per character playback state of an {@link AnimationAsset}, the graph state and the last evaluated pose.
+ */
+public class AnimationInstance {
+    public final AnimationAsset asset;
+    public final GraphInstance graph;
+    public final PoseBuffer pose;
+
+    public AnimationInstance(AnimationAsset asset) {
+        this.asset = asset;
+        this.graph = new GraphInstance(asset.graph);
+        this.pose = new PoseBuffer(asset.sprite.getBoneCapacity());
+    }
+    /**
+     * Ticks the graph and stores its pose, evaluator only provides scratch memory and can be shared by all instances of the asset.
+     */
+    public void update(float step, GraphEvaluator evaluator){
+        graph.tick(step);
+        pose.copyFrom(evaluator.evaluate(graph, asset.sprite));
+        graph.endFrame();
+    }
+}
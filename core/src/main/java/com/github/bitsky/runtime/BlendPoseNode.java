@@ -0,0 +1,26 @@
+package com.github.bitsky.runtime;
+
+import com.github.bitsky.AnimatedSprite;
+import com.github.bitsky.PoseBuffer;
+import org.json.JSONObject;
+
+public class BlendPoseNode extends NodeDefinition {
+    public ParameterExpression blendValue = new ParameterExpression("0.5");
+    @Override
+    public String getTypeName() {
+        return "Blend Pose";
+    }
+    @Override
+    public void load(JSONObject json) {
+        super.load(json);
+        this.blendValue = new ParameterExpression(json.getString("blendValue"));
+    }
+    @Override
+    public void link(GraphDefinition definition) {
+        blendValue.link(definition);
+    }
+    @Override
+    public void evaluate(GraphInstance instance, GraphEvaluator evaluator, AnimatedSprite sprite, PoseBuffer out) {
+        getInputPose(evaluator, "Pose1").lerpInto(getInputPose(evaluator, "Pose2"), blendValue.evaluate(instance), out);
+    }
+}
@@ -0,0 +1,23 @@
+package com.github.bitsky.runtime;
+
+import com.github.bitsky.AnimatedSprite;
+
+/**
+ * Bone indices a node resolved from its bone ids, valid until bones of the sprite are added, removed or loaded.
+ * Bindings are immutable, so nodes shared by several threads can replace a stale one without locking.
+ */
+public abstract class BoneBinding {
+    public final AnimatedSprite sprite;
+    public final int hierarchyVersion;
+    protected BoneBinding(AnimatedSprite sprite) {
+        this.sprite = sprite;
+        this.hierarchyVersion = sprite.getHierarchyVersion();
+    }
+    public boolean isCurrent(AnimatedSprite sprite){
+        return this.sprite == sprite && hierarchyVersion == sprite.getHierarchyVersion();
+    }
+    /**
+     * @return false if the bones were missing or do not fit the node, it passes its input through then
+     */
+    public abstract boolean isValid();
+}
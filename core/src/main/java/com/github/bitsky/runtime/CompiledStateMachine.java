@@ -0,0 +1,261 @@
+package com.github.bitsky.runtime;
+
+import com.github.bitsky.AnimationStateMachine;
+import com.github.bitsky.EInterpolationFunction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.function.ToIntFunction;
+
+/**
+ * {@link AnimationStateMachine} flattened into arrays: states are indexed in {@link #stateIds} order, the transitions of
+ * state s are transitionStarts[s] until transitionStarts[s+1] in the transition arrays and the conditions of transition t
+ * are conditionStarts[t] until conditionStarts[t+1] in the condition arrays, reading properties by slot.
+ * <p>
+ * Whether a transition passes depends only on the current state, the properties its conditions read and whether the
+ * state finished, so a {@link Trigger} remembering them skips checking states whose inputs did not change.
+ */
+public class CompiledStateMachine {
+    private static final byte EQUAL = 0;
+    private static final byte NOT_EQUAL = 1;
+    private static final byte LESS = 2;
+    private static final byte MORE = 3;
+    private static final byte LESS_EQUAL = 4;
+    private static final byte MORE_EQUAL = 5;
+
+    public final UUID[] stateIds;
+    public final boolean[] endStates;
+    /**
+     * -1 if the start state is missing.
+     */
+    public final int startState;
+    public final int[] transitionStarts;
+    public final int[] targets;
+    public final float[] blendTimes;
+    public final EInterpolationFunction[] interpolationFunctions;
+    public final boolean[] requireFinished;
+    public final boolean[] resets;
+    /**
+     * Position of every transition in {@link AnimationStateMachine.State#transitions}.
+     */
+    public final int[] sourceIndices;
+    private final int[] conditionStarts;
+    /**
+     * Property slot of every condition, -1 if the property is missing and the condition never passes.
+     */
+    private final int[] conditionProperties;
+    private final float[] conditionValues;
+    private final byte[] conditionComparators;
+    /**
+     * Distinct property slots read by the transitions of state s, dependencyStarts[s] until dependencyStarts[s+1].
+     */
+    private final int[] dependencyStarts;
+    private final int[] dependencies;
+    /**
+     * States with at least one transition requiring the state to be finished.
+     */
+    public final boolean[] waitsForFinished;
+    private final HashMap<UUID, Integer> stateIndices;
+    private final int maxDependencies;
+
+    private CompiledStateMachine(AnimationStateMachine stateMachine, ToIntFunction<UUID> propertySlots) {
+        int count = stateMachine.states.size();
+        this.stateIds = stateMachine.states.keySet().toArray(new UUID[0]);
+        this.stateIndices = new HashMap<>();
+        for(int i = 0;i < count;i++){
+            stateIndices.put(stateIds[i], i);
+        }
+        ArrayList<AnimationStateMachine.StateTransition> transitions = new ArrayList<>();
+        ArrayList<Integer> sources = new ArrayList<>();
+        this.endStates = new boolean[count];
+        this.transitionStarts = new int[count+1];
+        for(int i = 0;i < count;i++){
+            AnimationStateMachine.State state = stateMachine.states.get(stateIds[i]);
+            endStates[i] = state.endState;
+            transitionStarts[i] = transitions.size();
+            for(int j = 0;j < state.transitions.size();j++){
+                if(!stateIndices.containsKey(state.transitions.get(j).target))
+                    continue;
+                transitions.add(state.transitions.get(j));
+                sources.add(j);
+            }
+        }
+        transitionStarts[count] = transitions.size();
+
+        int transitionCount = transitions.size();
+        this.targets = new int[transitionCount];
+        this.blendTimes = new float[transitionCount];
+        this.interpolationFunctions = new EInterpolationFunction[transitionCount];
+        this.requireFinished = new boolean[transitionCount];
+        this.resets = new boolean[transitionCount];
+        this.sourceIndices = new int[transitionCount];
+        this.conditionStarts = new int[transitionCount+1];
+        int conditionCount = 0;
+        for(AnimationStateMachine.StateTransition transition : transitions){
+            conditionCount += transition.conditions.size();
+        }
+        this.conditionProperties = new int[conditionCount];
+        this.conditionValues = new float[conditionCount];
+        this.conditionComparators = new byte[conditionCount];
+        int condition = 0;
+        for(int i = 0;i < transitionCount;i++){
+            AnimationStateMachine.StateTransition transition = transitions.get(i);
+            targets[i] = stateIndices.get(transition.target);
+            blendTimes[i] = transition.blendTime;
+            interpolationFunctions[i] = transition.interpolationFunction;
+            requireFinished[i] = transition.requireFinished;
+            resets[i] = transition.resets;
+            sourceIndices[i] = sources.get(i);
+            conditionStarts[i] = condition;
+            for(AnimationStateMachine.TransitionCondition transitionCondition : transition.conditions){
+                conditionProperties[condition] = transitionCondition.propertyId == null || transitionCondition.comparator == null ? -1 : propertySlots.applyAsInt(transitionCondition.propertyId);
+                conditionValues[condition] = transitionCondition.value;
+                conditionComparators[condition] = transitionCondition.comparator == null ? EQUAL : (byte) transitionCondition.comparator.ordinal();
+                condition++;
+            }
+        }
+        conditionStarts[transitionCount] = condition;
+
+        this.dependencyStarts = new int[count+1];
+        this.waitsForFinished = new boolean[count];
+        int[] dependencies = new int[conditionCount];
+        int dependencyCount = 0;
+        int maxDependencies = 0;
+        for(int state = 0;state < count;state++){
+            dependencyStarts[state] = dependencyCount;
+            for(int transition = transitionStarts[state];transition < transitionStarts[state+1];transition++){
+                waitsForFinished[state] |= requireFinished[transition];
+                for(int i = conditionStarts[transition];i < conditionStarts[transition+1];i++){
+                    int property = conditionProperties[i];
+                    boolean known = property == -1;
+                    for(int j = dependencyStarts[state];j < dependencyCount && !known;j++){
+                        known = dependencies[j] == property;
+                    }
+                    if(!known)
+                        dependencies[dependencyCount++] = property;
+                }
+            }
+            maxDependencies = Math.max(maxDependencies, dependencyCount-dependencyStarts[state]);
+        }
+        dependencyStarts[count] = dependencyCount;
+        this.dependencies = Arrays.copyOf(dependencies, dependencyCount);
+        this.maxDependencies = maxDependencies;
+        Integer start = stateMachine.startState == null ? null : stateIndices.get(stateMachine.startState);
+        this.startState = start == null ? -1 : start;
+    }
+
+    /**
+     * @param propertySlots slot of a property id in the property arrays passed in later, -1 if it does not exist
+     */
+    public static CompiledStateMachine compile(AnimationStateMachine stateMachine, ToIntFunction<UUID> propertySlots){
+        return new CompiledStateMachine(stateMachine, propertySlots);
+    }
+
+    public int getStateCount(){
+        return stateIds.length;
+    }
+    /**
+     * @return index of the state or -1
+     */
+    public int getStateIndex(UUID state){
+        Integer index = state == null ? null : stateIndices.get(state);
+        return index == null ? -1 : index;
+    }
+    /**
+     * @return first transition of state whose conditions pass, skipping transitions requiring a finished state
+     * unless finished, -1 if there is none
+     */
+    public int findTransition(int state, float[] properties, boolean finished){
+        for(int transition = transitionStarts[state];transition < transitionStarts[state+1];transition++){
+            if(requireFinished[transition] && !finished)
+                continue;
+            if(passes(transition, properties))
+                return transition;
+        }
+        return -1;
+    }
+    public boolean passes(int transition, float[] properties){
+        for(int i = conditionStarts[transition];i < conditionStarts[transition+1];i++){
+            int property = conditionProperties[i];
+            if(property == -1)
+                return false;
+            float a = properties[property];
+            float b = conditionValues[i];
+            boolean passes;
+            switch(conditionComparators[i]){
+                case EQUAL:
+                    passes = a == b;
+                    break;
+                case NOT_EQUAL:
+                    passes = a != b;
+                    break;
+                case LESS:
+                    passes = a < b;
+                    break;
+                case MORE:
+                    passes = a > b;
+                    break;
+                case LESS_EQUAL:
+                    passes = a <= b;
+                    break;
+                default:
+                    passes = a >= b;
+                    break;
+            }
+            if(!passes)
+                return false;
+        }
+        return true;
+    }
+
+    public Trigger createTrigger(){
+        return new Trigger(maxDependencies);
+    }
+    /**
+     * Records the inputs of the transitions of state.
+     * @param finished whether the state finished, only read if it {@link #waitsForFinished}
+     * @return false if state, its properties and finished are the same as at the last call, so {@link #findTransition}
+     * would return the same as then
+     */
+    public boolean update(Trigger trigger, int state, float[] properties, boolean finished){
+        boolean changed = trigger.state != state;
+        trigger.state = state;
+        finished &= waitsForFinished[state];
+        if(trigger.finished != finished){
+            trigger.finished = finished;
+            changed = true;
+        }
+        float[] values = trigger.values;
+        int start = dependencyStarts[state];
+        for(int i = start;i < dependencyStarts[state+1];i++){
+            float value = properties[dependencies[i]];
+            //NaN never equals itself and is always reported as changed
+            if(changed || values[i-start] != value){
+                values[i-start] = value;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Inputs of the transitions of a state at the last check, one per state machine and instance.
+     */
+    public static class Trigger {
+        private int state;
+        private boolean finished;
+        private final float[] values;
+        private Trigger(int capacity) {
+            this.state = -1;
+            this.values = new float[capacity];
+        }
+        /**
+         * Makes the next {@link #update} report a change.
+         */
+        public void invalidate(){
+            state = -1;
+        }
+    }
+}
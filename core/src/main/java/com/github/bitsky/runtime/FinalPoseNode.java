@@ -0,0 +1,15 @@
+package com.github.bitsky.runtime;
+
+import com.github.bitsky.AnimatedSprite;
+import com.github.bitsky.PoseBuffer;
+
+public class FinalPoseNode extends NodeDefinition {
+    @Override
+    public String getTypeName() {
+        return "";
+    }
+    @Override
+    public void evaluate(GraphInstance instance, GraphEvaluator evaluator, AnimatedSprite sprite, PoseBuffer out) {
+        out.copyFrom(getInputPose(evaluator, "Out"));
+    }
+}
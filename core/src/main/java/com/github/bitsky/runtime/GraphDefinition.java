@@ -0,0 +1,142 @@
+package com.github.bitsky.runtime;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Immutable node graph loaded from the graph section of a project, see {@link com.github.bitsky.ProjectFile#read}.
+ * Only nodes reachable from the final pose are kept, in topological order with the final pose last.
+ * Playback state lives in {@link GraphInstance}, so one definition can drive any number of characters.
+ */
+public class GraphDefinition {
+    public static final HashMap<String, Supplier<NodeDefinition>> NODE_TYPES = new HashMap<>();
+    static {
+        NODE_TYPES.put("Animated Pose", AnimatedPoseNode::new);
+        NODE_TYPES.put("Blend Pose", BlendPoseNode::new);
+        NODE_TYPES.put("Multiply Pose", MultiplyPoseNode::new);
+        NODE_TYPES.put("Playback Speed", PlaybackSpeedNode::new);
+        NODE_TYPES.put("Add Pose", AddPoseNode::new);
+        NODE_TYPES.put("State Machine", StateMachineNode::new);
+        NODE_TYPES.put("Symmetry Constraint", SymmetryConstraintNode::new);
+        NODE_TYPES.put("IK Constraint", IKConstraintNode::new);
+        NODE_TYPES.put("Layer Blend", LayerBlendNode::new);
+    }
+
+    public final NodeDefinition[] nodes;
+    public final UUID[] propertyIds;
+    public final String[] propertyNames;
+    public final float[] propertyValues;
+    /**
+     * Value a property returns to after every tick, NaN for properties without reset value.
+     */
+    public final float[] propertyResetValues;
+
+    private GraphDefinition(NodeDefinition[] nodes, UUID[] propertyIds, String[] propertyNames, float[] propertyValues, float[] propertyResetValues) {
+        this.nodes = nodes;
+        this.propertyIds = propertyIds;
+        this.propertyNames = propertyNames;
+        this.propertyValues = propertyValues;
+        this.propertyResetValues = propertyResetValues;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the graph has unknown node types or the final pose depends on itself
+     */
+    public static GraphDefinition load(JSONObject graph){
+        JSONObject propertiesJson = graph.getJSONObject("properties");
+        int propertyCount = propertiesJson.length();
+        UUID[] propertyIds = new UUID[propertyCount];
+        String[] propertyNames = new String[propertyCount];
+        float[] propertyValues = new float[propertyCount];
+        float[] propertyResetValues = new float[propertyCount];
+        int property = 0;
+        for(String id : propertiesJson.keySet()){
+            JSONObject propertyJson = propertiesJson.getJSONObject(id);
+            propertyIds[property] = UUID.fromString(propertyJson.getString("id"));
+            propertyNames[property] = propertyJson.getString("name");
+            propertyValues[property] = propertyJson.getFloat("value");
+            propertyResetValues[property] = propertyJson.has("resetValue") ? propertyJson.getFloat("resetValue") : Float.NaN;
+            property++;
+        }
+
+        NodeDefinition root = new FinalPoseNode();
+        root.id = UUID.randomUUID();
+        root.load(graph.getJSONObject("final"));
+        HashMap<UUID, NodeDefinition> nodes = new HashMap<>();
+        JSONObject nodesJson = graph.getJSONObject("nodes");
+        for(String id : nodesJson.keySet()){
+            JSONObject nodeJson = nodesJson.getJSONObject(id);
+            Supplier<NodeDefinition> type = NODE_TYPES.get(nodeJson.getString("type"));
+            if(type == null)
+                throw new IllegalArgumentException("Unknown node type " + nodeJson.getString("type"));
+            NodeDefinition node = type.get();
+            node.id = UUID.fromString(id);
+            node.load(nodeJson);
+            nodes.put(node.id, node);
+        }
+        ArrayList<NodeDefinition> order = new ArrayList<>();
+        if(!visit(root, nodes, new HashMap<>(), order))
+            throw new IllegalArgumentException("Graph contains a cycle");
+        for(int i = 0;i < order.size();i++){
+            order.get(i).index = i;
+        }
+        for(NodeDefinition node : order){
+            ArrayList<String> names = new ArrayList<>();
+            ArrayList<Integer> indices = new ArrayList<>();
+            for(Map.Entry<String, UUID> entry : node.inputIds.entrySet()){
+                NodeDefinition input = nodes.get(entry.getValue());
+                if(input == null)
+                    continue;
+                names.add(entry.getKey());
+                indices.add(input.index);
+            }
+            node.inputNames = names.toArray(new String[0]);
+            node.inputs = indices.stream().mapToInt(Integer::intValue).toArray();
+        }
+        GraphDefinition definition = new GraphDefinition(order.toArray(new NodeDefinition[0]), propertyIds, propertyNames, propertyValues, propertyResetValues);
+        for(NodeDefinition node : definition.nodes){
+            node.link(definition);
+        }
+        return definition;
+    }
+    private static boolean visit(NodeDefinition node, HashMap<UUID, NodeDefinition> nodes, HashMap<UUID, Boolean> visited, ArrayList<NodeDefinition> order){
+        Boolean finished = visited.get(node.id);
+        if(finished != null)
+            return finished;
+        visited.put(node.id, false);
+        for(UUID input : node.inputIds.values()){
+            NodeDefinition inputNode = nodes.get(input);
+            if(inputNode != null && !visit(inputNode, nodes, visited, order))
+                return false;
+        }
+        visited.put(node.id, true);
+        order.add(node);
+        return true;
+    }
+
+    public NodeDefinition getRoot(){
+        return nodes[nodes.length-1];
+    }
+    /**
+     * @return index of the first property with this name or -1
+     */
+    public int getPropertyIndex(String name){
+        for(int i = 0;i < propertyNames.length;i++){
+            if(propertyNames[i].equals(name))
+                return i;
+        }
+        return -1;
+    }
+    public int getPropertyIndex(UUID id){
+        for(int i = 0;i < propertyIds.length;i++){
+            if(propertyIds[i].equals(id))
+                return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,99 @@
+package com.github.bitsky.runtime;
+
+import com.github.bitsky.AnimatedSprite;
+import com.github.bitsky.PoseBuffer;
+
+import java.util.Arrays;
+
+/**
+ * Scratch pose buffers and solvers for evaluating a {@link GraphDefinition}. Holds no playback state, so one evaluator can evaluate
+ * any number of {@link GraphInstance}s one after another, but must not be used by several threads at once.
+ */
+public class GraphEvaluator {
+    public final GraphDefinition definition;
+    private final PoseBuffer[] poses;
+    private final PoseBuffer empty;
+    private final boolean[] needed;
+    private final boolean[] deferred;
+    private final IKSolver2D ikSolver;
+    private final PoseBuffer scratch;
+    /**
+     * Per thread scratch of nodes, indexed by {@link NodeDefinition#index}.
+     */
+    public final Object[] nodeScratch;
+
+    public GraphEvaluator(GraphDefinition definition) {
+        this.definition = definition;
+        int count = definition.nodes.length;
+        this.poses = new PoseBuffer[count];
+        for(int i = 0;i < count;i++){
+            poses[i] = new PoseBuffer(0);
+        }
+        this.empty = new PoseBuffer(0);
+        this.needed = new boolean[count];
+        this.deferred = new boolean[count];
+        this.ikSolver = new IKSolver2D();
+        this.scratch = new PoseBuffer(0);
+        this.nodeScratch = new Object[count];
+    }
+
+    /**
+     * Evaluates the nodes the final pose of instance currently depends on, each at most once.
+     * @return pose of the final node, valid until the next evaluation
+     */
+    public PoseBuffer evaluate(GraphInstance instance, AnimatedSprite sprite){
+        int capacity = sprite.getBoneCapacity();
+        empty.ensureCapacity(capacity);
+        NodeDefinition[] nodes = definition.nodes;
+        Arrays.fill(needed, false);
+        needed[nodes.length-1] = true;
+        for(int i = nodes.length-1;i >= 0;i--){
+            if(!needed[i])
+                continue;
+            NodeDefinition node = nodes[i];
+            node.prepare(instance, this, sprite);
+            for(int j = 0;j < node.inputs.length;j++){
+                if(node.needsInput(instance, this, j))
+                    needed[node.inputs[j]] = true;
+            }
+        }
+        for(int i = 0;i < nodes.length;i++){
+            if(!needed[i])
+                continue;
+            poses[i].ensureCapacity(capacity);
+            nodes[i].evaluate(instance, this, sprite, poses[i]);
+        }
+        return poses[nodes.length-1];
+    }
+    public PoseBuffer getPose(int node){
+        return poses[node];
+    }
+    /**
+     * @return true if node was evaluated by the running evaluation
+     */
+    public boolean isNeeded(int node){
+        return needed[node];
+    }
+    /**
+     * Marks node as solved by the caller after the evaluation, like IK constraints of an {@link InstanceBatch} solved
+     * together by an {@link IKBatch}. Deferred nodes pass their input through.
+     */
+    public void setDeferred(int node, boolean deferred){
+        this.deferred[node] = deferred;
+    }
+    public boolean isDeferred(int node){
+        return deferred[node];
+    }
+    public PoseBuffer getEmptyPose(){
+        return empty;
+    }
+    public IKSolver2D getIKSolver(){
+        return ikSolver;
+    }
+    /**
+     * Pose a node may use while it evaluates, for example for world transforms, its content is undefined afterwards.
+     */
+    public PoseBuffer getScratchPose(){
+        return scratch;
+    }
+}
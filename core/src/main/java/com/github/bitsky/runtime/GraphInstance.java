@@ -0,0 +1,139 @@
+package com.github.bitsky.runtime;
+
+import net.objecthunter.exp4j.Expression;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.UUID;
+
+/**
+ * Playback state of one character driven by a {@link GraphDefinition}. Node state is kept in flat arrays indexed by
+ * {@link NodeDefinition#index}, poses are computed by a {@link GraphEvaluator} that can be shared by many instances.
+ */
+public class GraphInstance {
+    public final GraphDefinition definition;
+    public final float[] properties;
+    /**
+     * Animation time of animated poses and transition time of state machines.
+     */
+    public final float[] times;
+    /**
+     * Current state of state machines, -1 if it has none.
+     */
+    public final int[] states;
+    /**
+     * Running transition of state machines, -1 if none.
+     */
+    public final int[] transitions;
+    /**
+     * Node specific state that does not fit the other arrays, for example the previous solution of IK constraints.
+     */
+    public final Object[] nodeStates;
+    private final int[] tickedFrames;
+    private int tickFrame;
+    /**
+     * Variable values of the expression being evaluated.
+     */
+    final float[] expressionValues;
+    /**
+     * Copy of every shared exp4j expression evaluated by this instance, created on first use.
+     */
+    private IdentityHashMap<Expression, Expression> expressions;
+
+    public GraphInstance(GraphDefinition definition) {
+        this.definition = definition;
+        int count = definition.nodes.length;
+        this.properties = definition.propertyValues.clone();
+        this.times = new float[count];
+        this.states = new int[count];
+        this.transitions = new int[count];
+        this.nodeStates = new Object[count];
+        this.tickedFrames = new int[count];
+        Arrays.fill(tickedFrames, -1);
+        this.expressionValues = new float[definition.propertyNames.length];
+        for(NodeDefinition node : definition.nodes){
+            node.reset(this);
+        }
+    }
+
+    public void setProperty(String name, float value){
+        int index = definition.getPropertyIndex(name);
+        if(index == -1)
+            throw new IllegalArgumentException("Unknown property " + name);
+        properties[index] = value;
+    }
+    public float getProperty(String name){
+        int index = definition.getPropertyIndex(name);
+        if(index == -1)
+            throw new IllegalArgumentException("Unknown property " + name);
+        return properties[index];
+    }
+
+    public void reset(){
+        definition.getRoot().reset(this);
+    }
+    /**
+     * Advances every reachable node once, call {@link #endFrame} after evaluating the frame.
+     */
+    public void tick(float step){
+        tickFrame++;
+        definition.getRoot().tick(this, step);
+    }
+    /**
+     * Returns properties with a reset value to it, so values set for a single frame are seen by the tick and by the
+     * expressions of the evaluation.
+     */
+    public void endFrame(){
+        for(int i = 0;i < properties.length;i++){
+            if(!Float.isNaN(definition.propertyResetValues[i]))
+                properties[i] = definition.propertyResetValues[i];
+        }
+    }
+    public boolean isFinished(){
+        return definition.getRoot().isFinished(this);
+    }
+    /**
+     * Takes over the state of the nodes this instance has in common with previous, matched by id, so a graph edited
+     * while playing keeps playing. Nodes only in this instance keep their initial state.
+     */
+    public void copyStateFrom(GraphInstance previous){
+        HashMap<UUID, NodeDefinition> previousNodes = new HashMap<>();
+        for(NodeDefinition node : previous.definition.nodes){
+            previousNodes.put(node.id, node);
+        }
+        for(NodeDefinition node : definition.nodes){
+            NodeDefinition previousNode = previousNodes.get(node.id);
+            if(previousNode != null && previousNode.getClass() == node.getClass())
+                node.copyState(previous, previousNode, this);
+        }
+    }
+    /**
+     * Ticks node at most once per {@link #tick}, even if it is connected to several inputs.
+     */
+    public void tickNode(int node, float step){
+        if(tickedFrames[node] == tickFrame)
+            return;
+        tickedFrames[node] = tickFrame;
+        definition.nodes[node].tick(this, step);
+    }
+    public void resetNode(int node){
+        definition.nodes[node].reset(this);
+    }
+    public boolean isNodeFinished(int node){
+        return definition.nodes[node].isFinished(this);
+    }
+    /**
+     * @return copy of shared used only by this instance, exp4j expressions are not thread safe
+     */
+    Expression getExpression(Expression shared){
+        if(expressions == null)
+            expressions = new IdentityHashMap<>();
+        Expression expression = expressions.get(shared);
+        if(expression == null){
+            expression = new Expression(shared);
+            expressions.put(shared, expression);
+        }
+        return expression;
+    }
+}
@@ -0,0 +1,293 @@
+package com.github.bitsky.runtime;
+
+import com.github.bitsky.AnimatedSprite;
+import com.github.bitsky.PoseBuffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * IK chains of many poses, for example every foot and hand of a crowd, stored in structure of arrays layout and solved
+ * together by {@link #solve} on a {@link ForkJoinPool}. Chains are registered once, every solve reads the current poses
+ * and rotates the chain bones in place, warm starting from the previous solve. World transforms are computed only for
+ * the bones of each chain and its target and their ancestors.
+ * <p>
+ * Chains of one pose are solved in the order they were added, each seeing the rotations of the previous ones like
+ * IK nodes connected one after another. They have to be added one after another so a pose is never touched by two threads.
+ * {@link InstanceBatch} registers the trailing IK nodes of its graph here, the nodes themselves only pass their input
+ * through, see {@link GraphEvaluator#setDeferred}.
+ */
+public class IKBatch {
+    public final int capacity;
+    public final int chunkSize;
+    public int maxIterations = 20;
+    public float tolerance = 0.01f;
+    private final AnimatedSprite[] sprites;
+    private final PoseBuffer[] poses;
+    private final IKConstraintNode.Limits[] limits;
+    private final int[] targets;
+    /**
+     * Parent bone of the start bone, -1 for the root.
+     */
+    private final int[] startParents;
+    /**
+     * Start of the joints of every chain in the joint arrays, chain c has segmentCounts[c]+1 joints.
+     */
+    private final int[] jointOffsets;
+    private final int[] segmentCounts;
+    /**
+     * Bone index and solved world position of every joint, the last joint is the end bone.
+     */
+    private int[] jointBones;
+    public float[] jointX;
+    public float[] jointY;
+    /**
+     * Solution of the previous solve, see {@link IKSolver2D#storeAngles}, NaN at the offset of chains without one.
+     */
+    private float[] angles;
+    /**
+     * Iterations and remaining distance to the target of every chain in the last solve.
+     */
+    public final int[] iterations;
+    public final float[] distances;
+    private final ArrayList<Chunk> chunks;
+    private final Set<PoseBuffer> closedPoses;
+    private final RecursiveAction root;
+    private int size;
+    private int jointCount;
+
+    public IKBatch(int capacity, int chunkSize) {
+        this.capacity = capacity;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.sprites = new AnimatedSprite[capacity];
+        this.poses = new PoseBuffer[capacity];
+        this.limits = new IKConstraintNode.Limits[capacity];
+        this.targets = new int[capacity];
+        this.startParents = new int[capacity];
+        this.jointOffsets = new int[capacity];
+        this.segmentCounts = new int[capacity];
+        this.jointBones = new int[capacity*3];
+        this.jointX = new float[capacity*3];
+        this.jointY = new float[capacity*3];
+        this.angles = new float[capacity*3];
+        this.iterations = new int[capacity];
+        this.distances = new float[capacity];
+        this.chunks = new ArrayList<>();
+        this.closedPoses = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.root = new RecursiveAction() {
+            @Override
+            protected void compute() {
+                for(int i = 1;i < chunks.size();i++){
+                    chunks.get(i).reinitialize();
+                    chunks.get(i).fork();
+                }
+                chunks.get(0).reinitialize();
+                chunks.get(0).invoke();
+                for(int i = chunks.size()-1;i >= 1;i--){
+                    chunks.get(i).join();
+                }
+            }
+        };
+        this.size = 0;
+        this.jointCount = 0;
+    }
+    public IKBatch(int capacity) {
+        this(capacity, 64);
+    }
+
+    public int size(){
+        return size;
+    }
+    /**
+     * Adds the chain of node, see {@link IKConstraintNode#solve}. Unless node is deferred, see
+     * {@link GraphEvaluator#setDeferred}, evaluating it solves the chain again.
+     */
+    public int add(AnimatedSprite sprite, PoseBuffer pose, IKConstraintNode node){
+        return add(sprite, pose, node.start, node.end, node.target, node.limits);
+    }
+    /**
+     * Adds a chain rotating the bones from start to end of pose so end reaches target.
+     * @return index of the chain, -1 if the bones do not form a chain
+     * @throws IllegalStateException if the batch is full
+     * @throws IllegalArgumentException if chains of pose were added before, but not directly before this one
+     */
+    public int add(AnimatedSprite sprite, PoseBuffer pose, UUID start, UUID end, UUID target, IKConstraintNode.Limits jointLimits){
+        if(size == capacity)
+            throw new IllegalStateException("Batch is full");
+        PoseBuffer previous = size == 0 ? null : poses[size-1];
+        if(pose != previous && closedPoses.contains(pose))
+            throw new IllegalArgumentException("Chains of one pose have to be added one after another");
+        IKConstraintNode.Chain resolved = IKConstraintNode.Chain.resolve(sprite, start, end, target);
+        if(!resolved.isValid())
+            return -1;
+        int segments = resolved.bones.length-1;
+        if(jointCount+segments+1 > jointBones.length){
+            int length = Math.max(jointBones.length*2, jointCount+segments+1);
+            jointBones = Arrays.copyOf(jointBones, length);
+            jointX = Arrays.copyOf(jointX, length);
+            jointY = Arrays.copyOf(jointY, length);
+            angles = Arrays.copyOf(angles, length);
+        }
+        System.arraycopy(resolved.bones, 0, jointBones, jointCount, segments+1);
+        angles[jointCount] = Float.NaN;
+
+        if(pose != previous){
+            if(previous != null)
+                closedPoses.add(previous);
+            //chunks only end between poses
+            if(chunks.isEmpty() || size-chunks.get(chunks.size()-1).start >= chunkSize)
+                chunks.add(new Chunk(chunks.size(), size));
+        }
+        int chain = size++;
+        sprites[chain] = sprite;
+        poses[chain] = pose;
+        limits[chain] = jointLimits;
+        targets[chain] = resolved.target;
+        startParents[chain] = resolved.parent;
+        jointOffsets[chain] = jointCount;
+        segmentCounts[chain] = segments;
+        iterations[chain] = 0;
+        distances[chain] = 0;
+        jointCount += segments+1;
+        return chain;
+    }
+    /**
+     * Removes the chains added after the first count, keeping the warm start of the others.
+     */
+    public void truncate(int count){
+        if(count >= size)
+            return;
+        Arrays.fill(sprites, count, size, null);
+        Arrays.fill(poses, count, size, null);
+        Arrays.fill(limits, count, size, null);
+        size = count;
+        jointCount = size == 0 ? 0 : jointOffsets[size-1]+segmentCounts[size-1]+1;
+        while(!chunks.isEmpty() && chunks.get(chunks.size()-1).start >= size){
+            chunks.remove(chunks.size()-1);
+        }
+        closedPoses.clear();
+        for(int i = 1;i < size;i++){
+            if(poses[i] != poses[i-1])
+                closedPoses.add(poses[i-1]);
+        }
+    }
+    /**
+     * Removes all chains.
+     */
+    public void clear(){
+        Arrays.fill(sprites, 0, size, null);
+        Arrays.fill(poses, 0, size, null);
+        Arrays.fill(limits, 0, size, null);
+        closedPoses.clear();
+        chunks.clear();
+        size = 0;
+        jointCount = 0;
+    }
+    /**
+     * Makes the next solve of chain start from the pose instead of the previous solution, for example after a teleport.
+     */
+    public void resetWarmStart(int chain){
+        angles[jointOffsets[chain]] = Float.NaN;
+    }
+    public int getSegmentCount(int chain){
+        return segmentCounts[chain];
+    }
+    /**
+     * @return position of joint of chain in {@link #jointX} and {@link #jointY}
+     */
+    public int getJointOffset(int chain){
+        return jointOffsets[chain];
+    }
+    public boolean isConverged(int chain){
+        return distances[chain] <= tolerance;
+    }
+    public int getConvergedCount(){
+        int count = 0;
+        for(int i = 0;i < size;i++){
+            if(distances[i] <= tolerance)
+                count++;
+        }
+        return count;
+    }
+    public int getTotalIterations(){
+        int total = 0;
+        for(int i = 0;i < size;i++){
+            total += iterations[i];
+        }
+        return total;
+    }
+
+    public void solve(){
+        solve(ForkJoinPool.commonPool());
+    }
+    public void solve(ForkJoinPool pool){
+        if(chunks.isEmpty())
+            return;
+        if(chunks.size() == 1){
+            chunks.get(0).compute();
+            return;
+        }
+        root.reinitialize();
+        pool.invoke(root);
+    }
+
+    /**
+     * Chains from start up to the next chunk with their own solver and world pose.
+     */
+    private class Chunk extends RecursiveAction {
+        private final int index;
+        private final int start;
+        private final IKSolver2D solver;
+        private final PoseBuffer world;
+        public Chunk(int index, int start) {
+            this.index = index;
+            this.start = start;
+            this.solver = new IKSolver2D();
+            this.world = new PoseBuffer(0);
+        }
+        @Override
+        protected void compute() {
+            int end = index == chunks.size()-1 ? size : chunks.get(index+1).start;
+            solver.maxIterations = maxIterations;
+            solver.tolerance = tolerance;
+            for(int chain = start;chain < end;chain++){
+                AnimatedSprite sprite = sprites[chain];
+                PoseBuffer pose = poses[chain];
+                int offset = jointOffsets[chain];
+                int segments = segmentCounts[chain];
+                pose.computeWorldOf(sprite, jointBones[offset+segments], world);
+                pose.computeWorldOf(sprite, targets[chain], world);
+                solver.setChain(segments);
+                for(int joint = 0;joint <= segments;joint++){
+                    int bone = jointBones[offset+joint];
+                    solver.setJoint(joint, world.tx[bone], world.ty[bone]);
+                }
+                solver.measureLengths();
+                limits[chain].apply(solver);
+                int parent = startParents[chain];
+                float parentRotation = parent == -1 ? 0 : world.rot[parent];
+                solver.setBaseDirection((float) Math.cos(parentRotation), (float) Math.sin(parentRotation));
+                if(!Float.isNaN(angles[offset]))
+                    solver.loadAngles(angles, offset);
+                solver.solve(world.tx[targets[chain]], world.ty[targets[chain]]);
+                solver.storeAngles(angles, offset);
+                iterations[chain] = solver.getIterations();
+                distances[chain] = solver.getDistance();
+
+                float startRotation = world.rot[jointBones[offset]];
+                for(int joint = 0;joint <= segments;joint++){
+                    jointX[offset+joint] = solver.x[joint];
+                    jointY[offset+joint] = solver.y[joint];
+                    if(joint < segments)
+                        pose.setRotation(jointBones[offset+joint], IKConstraintNode.getRotation(solver, joint, startRotation));
+                }
+            }
+        }
+    }
+}
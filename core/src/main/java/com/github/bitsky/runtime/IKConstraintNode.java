@@ -0,0 +1,235 @@
+package com.github.bitsky.runtime;
+
+import com.github.bitsky.AnimatedSprite;
+import com.github.bitsky.AnimatedSpriteBone;
+import com.github.bitsky.PoseBuffer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.UUID;
+
+public class IKConstraintNode extends NodeDefinition {
+    /**
+     * Largest bend in degrees of joints without configured limits.
+     */
+    public static final float JOINT_LIMIT = 90;
+    public UUID start;
+    public UUID end;
+    public UUID target;
+    public Limits limits = Limits.COUNTERCLOCKWISE;
+    private volatile Chain chain;
+    @Override
+    public String getTypeName() {
+        return "IK Constraint";
+    }
+    @Override
+    public void load(JSONObject json) {
+        super.load(json);
+        this.start = json.has("start") ? UUID.fromString(json.getString("start")) : null;
+        this.end = json.has("end") ? UUID.fromString(json.getString("end")) : null;
+        this.target = json.has("target") ? UUID.fromString(json.getString("target")) : null;
+        this.limits = Limits.load(json);
+    }
+    @Override
+    public void evaluate(GraphInstance instance, GraphEvaluator evaluator, AnimatedSprite sprite, PoseBuffer out) {
+        if(evaluator.isDeferred(index)){
+            out.copyFrom(getInputPose(evaluator, "Input"));
+            return;
+        }
+        float[] warmStart = (float[]) instance.nodeStates[index];
+        if(warmStart == null)
+            warmStart = new float[]{Float.NaN};
+        instance.nodeStates[index] = solve(sprite, getInputPose(evaluator, "Input"), getChain(sprite), limits, evaluator.getIKSolver(), evaluator.getScratchPose(), warmStart, out);
+    }
+    /**
+     * @return chain of start, end and target in sprite, resolved again only after the hierarchy changed
+     */
+    public Chain getChain(AnimatedSprite sprite){
+        Chain chain = this.chain;
+        if(chain == null || !chain.isCurrent(sprite)){
+            chain = Chain.resolve(sprite, start, end, target);
+            this.chain = chain;
+        }
+        return chain;
+    }
+
+    @Override
+    public void reset(GraphInstance instance) {
+        super.reset(instance);
+        instance.nodeStates[index] = null;
+    }
+
+    /**
+     * Rotates the bones of chain so its end reaches the target. World transforms are computed only for the chain
+     * and the target and their ancestors.
+     * @param world scratch for world transforms, must not be input or out
+     * @param warmStart solution of the previous frame the solver starts from, NaN in the first slot if there is none
+     * @return warmStart holding this solution, a new array if the chain no longer fit
+     */
+    public static float[] solve(AnimatedSprite sprite, PoseBuffer input, Chain chain, Limits limits, IKSolver2D solver, PoseBuffer world, float[] warmStart, PoseBuffer out){
+        out.copyFrom(input);
+        if(!chain.isValid())
+            return warmStart;
+        int[] bones = chain.bones;
+        int segments = bones.length-1;
+        input.computeWorldOf(sprite, bones[segments], world);
+        input.computeWorldOf(sprite, chain.target, world);
+        solver.setChain(segments);
+        for(int joint = 0;joint <= segments;joint++){
+            solver.setJoint(joint, world.tx[bones[joint]], world.ty[bones[joint]]);
+        }
+        solver.measureLengths();
+        limits.apply(solver);
+        float parentRotation = chain.parent == -1 ? 0 : world.rot[chain.parent];
+        solver.setBaseDirection((float) Math.cos(parentRotation), (float) Math.sin(parentRotation));
+        float startRotation = world.rot[bones[0]];
+        if(warmStart.length != segments)
+            warmStart = new float[segments];
+        else if(!Float.isNaN(warmStart[0]))
+            solver.loadAngles(warmStart);
+        solver.solve(world.tx[chain.target], world.ty[chain.target]);
+        solver.storeAngles(warmStart);
+
+        for(int joint = 0;joint < segments;joint++){
+            out.setRotation(bones[joint], getRotation(solver, joint, startRotation));
+        }
+        return warmStart;
+    }
+    /**
+     * Local rotation of the bone starting at joint of the solved chain, the angle from the direction of the previous
+     * segment, for the first bone from its world rotation before solving.
+     */
+    static float getRotation(IKSolver2D solver, int joint, float startRotation){
+        float previousX, previousY;
+        if(joint == 0){
+            previousX = (float) -Math.sin(startRotation);
+            previousY = (float) -Math.cos(startRotation);
+        } else {
+            previousX = solver.x[joint]-solver.x[joint-1];
+            previousY = solver.y[joint]-solver.y[joint-1];
+        }
+        float directionX = solver.x[joint+1]-solver.x[joint];
+        float directionY = solver.y[joint+1]-solver.y[joint];
+        return (float) Math.atan2(previousX*directionY - previousY*directionX, previousX*directionX + previousY*directionY);
+    }
+
+    /**
+     * Smallest and largest bend in degrees of every joint after the first, towards the clockwise or counterclockwise
+     * side. Joints without configured limits bend from 0 to {@link #JOINT_LIMIT} degrees.
+     */
+    public static class Limits {
+        public static final Limits COUNTERCLOCKWISE = new Limits(false, new float[0], new float[0]);
+        public static final Limits CLOCKWISE = new Limits(true, new float[0], new float[0]);
+        public final boolean isClockwise;
+        /**
+         * Limits of joint i+1.
+         */
+        private final float[] min;
+        private final float[] max;
+        public Limits(boolean isClockwise, float[] min, float[] max) {
+            this.isClockwise = isClockwise;
+            int count = Math.min(min.length, max.length);
+            this.min = new float[count];
+            this.max = new float[count];
+            for(int i = 0;i < count;i++){
+                this.min[i] = Math.min(min[i], max[i]);
+                this.max[i] = Math.max(min[i], max[i]);
+            }
+        }
+        public static Limits of(boolean isClockwise){
+            return isClockwise ? CLOCKWISE : COUNTERCLOCKWISE;
+        }
+        /**
+         * @return number of joints with configured limits, starting at joint 1
+         */
+        public int getCount(){
+            return min.length;
+        }
+        public float getMin(int joint){
+            return joint-1 < min.length ? min[joint-1] : 0;
+        }
+        public float getMax(int joint){
+            return joint-1 < max.length ? max[joint-1] : JOINT_LIMIT;
+        }
+        /**
+         * Sets the limits of every joint after the first of the chain of solver.
+         */
+        public void apply(IKSolver2D solver){
+            for(int joint = 1;joint < solver.getSegmentCount();joint++){
+                float min = (float) Math.toRadians(getMin(joint));
+                float max = (float) Math.toRadians(getMax(joint));
+                solver.setLimits(joint, isClockwise ? -max : min, isClockwise ? -min : max);
+            }
+        }
+        /**
+         * Reads "clockwise" and the optional "limits" array of {"min", "max"} objects of joint 1 onwards.
+         */
+        public static Limits load(JSONObject json){
+            boolean isClockwise = json.getBoolean("clockwise");
+            JSONArray limitsJson = json.optJSONArray("limits");
+            if(limitsJson == null)
+                return of(isClockwise);
+            float[] min = new float[limitsJson.length()];
+            float[] max = new float[limitsJson.length()];
+            for(int i = 0;i < min.length;i++){
+                JSONObject limit = limitsJson.getJSONObject(i);
+                min[i] = limit.optFloat("min", 0);
+                max[i] = limit.optFloat("max", JOINT_LIMIT);
+            }
+            return new Limits(isClockwise, min, max);
+        }
+        public void save(JSONObject json){
+            json.put("clockwise", isClockwise);
+            JSONArray limitsJson = new JSONArray();
+            for(int i = 0;i < min.length;i++){
+                limitsJson.put(new JSONObject().put("min", min[i]).put("max", max[i]));
+            }
+            json.put("limits", limitsJson);
+        }
+    }
+
+    /**
+     * Bone indices of the joints from start to end, the target and the parent of start.
+     */
+    public static class Chain extends BoneBinding {
+        /**
+         * Joint bones from start to end, empty if the bones do not form a chain.
+         */
+        public final int[] bones;
+        public final int target;
+        /**
+         * Parent of start, -1 if start is the root.
+         */
+        public final int parent;
+        private Chain(AnimatedSprite sprite, int[] bones, int target, int parent) {
+            super(sprite);
+            this.bones = bones;
+            this.target = target;
+            this.parent = parent;
+        }
+        public static Chain resolve(AnimatedSprite sprite, UUID start, UUID end, UUID target){
+            Chain invalid = new Chain(sprite, new int[0], -1, -1);
+            AnimatedSpriteBone startBone = start == null ? null : sprite.bones.get(start);
+            AnimatedSpriteBone endBone = end == null ? null : sprite.bones.get(end);
+            AnimatedSpriteBone targetBone = target == null ? null : sprite.bones.get(target);
+            if(startBone == null || endBone == null || targetBone == null || start.equals(end) || end.equals(target) || target.equals(start))
+                return invalid;
+            int[] parents = sprite.getParentIndices();
+            int joints = 1;
+            for(int bone = endBone.index;bone != startBone.index;bone = parents[bone]){
+                if(parents[bone] == -1)
+                    return invalid;
+                joints++;
+            }
+            int[] bones = new int[joints];
+            for(int bone = endBone.index, joint = joints-1;joint >= 0;bone = parents[bone], joint--){
+                bones[joint] = bone;
+            }
+            return new Chain(sprite, bones, targetBone.index, parents[startBone.index]);
+        }
+        @Override
+        public boolean isValid(){
+            return bones.length > 1;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.github.bitsky.runtime;
+
+import java.util.Arrays;
+
+/**
+ * Two dimensional IK on flat arrays, reused for any number of chains without allocating once its capacity is reached.
+ * Chains of two segments are solved analytically, longer chains or violated limits by FABRIK.
+ * Angles are counterclockwise in radians, the limits of joint i bound the direction of segment i relative to segment i-1,
+ * joint 0 relative to {@link #setBaseDirection}.
+ */
+public class IKSolver2D {
+    public int maxIterations = 20;
+    /**
+     * Distance between the chain end and the target that counts as reached.
+     */
+    public float tolerance = 0.01f;
+    /**
+     * Joint positions, {@link #getSegmentCount()}+1 entries.
+     */
+    public float[] x;
+    public float[] y;
+    private float[] lengths;
+    private float[] minAngles;
+    private float[] maxAngles;
+    private int segments;
+    private float baseDirectionX;
+    private float baseDirectionY;
+    private float startX;
+    private float startY;
+    private int iterations;
+    private float distance;
+
+    public IKSolver2D() {
+        this.x = new float[0];
+        this.y = new float[0];
+        this.lengths = new float[0];
+        this.minAngles = new float[0];
+        this.maxAngles = new float[0];
+    }
+
+    /**
+     * Starts a new chain with unlimited joints, joint positions have to be set afterwards.
+     */
+    public void setChain(int segments){
+        if(x.length < segments+1){
+            x = Arrays.copyOf(x, segments+1);
+            y = Arrays.copyOf(y, segments+1);
+            lengths = Arrays.copyOf(lengths, segments);
+            minAngles = Arrays.copyOf(minAngles, segments);
+            maxAngles = Arrays.copyOf(maxAngles, segments);
+        }
+        this.segments = segments;
+        Arrays.fill(minAngles, 0, segments, (float) -Math.PI);
+        Arrays.fill(maxAngles, 0, segments, (float) Math.PI);
+        this.baseDirectionX = 1;
+        this.baseDirectionY = 0;
+    }
+    public int getSegmentCount(){
+        return segments;
+    }
+    public void setJoint(int joint, float x, float y){
+        this.x[joint] = x;
+        this.y[joint] = y;
+    }
+    public void setLimits(int joint, float minAngle, float maxAngle){
+        minAngles[joint] = minAngle;
+        maxAngles[joint] = maxAngle;
+    }
+    /**
+     * Direction joint 0 is limited and stored against, usually the world direction of the parent of the chain.
+     */
+    public void setBaseDirection(float x, float y){
+        float length = (float) Math.sqrt(x*x + y*y);
+        if(length > 0){
+            this.baseDirectionX = x/length;
+            this.baseDirectionY = y/length;
+        }
+    }
+    /**
+     * Takes the segment lengths from the current joint positions.
+     */
+    public void measureLengths(){
+        for(int i = 0;i < segments;i++){
+            lengths[i] = (float) Math.hypot(x[i+1]-x[i], y[i+1]-y[i]);
+        }
+    }
+    /**
+     * Replaces the joint positions by a previous solution, see {@link #storeAngles}, keeping joint 0 and the segment lengths.
+     */
+    public void loadAngles(float[] angles){
+        loadAngles(angles, 0);
+    }
+    public void loadAngles(float[] angles, int offset){
+        float direction = (float) Math.atan2(baseDirectionY, baseDirectionX);
+        for(int i = 0;i < segments;i++){
+            direction += angles[offset+i];
+            x[i+1] = x[i] + (float) Math.cos(direction)*lengths[i];
+            y[i+1] = y[i] + (float) Math.sin(direction)*lengths[i];
+        }
+    }
+    /**
+     * Writes the angle of every segment relative to the previous one, segment 0 relative to the base direction.
+     */
+    public void storeAngles(float[] angles){
+        storeAngles(angles, 0);
+    }
+    public void storeAngles(float[] angles, int offset){
+        float previous = (float) Math.atan2(baseDirectionY, baseDirectionX);
+        for(int i = 0;i < segments;i++){
+            float direction = getDirection(i);
+            angles[offset+i] = wrap(direction-previous);
+            previous = direction;
+        }
+    }
+    /**
+     * @return absolute direction of segment
+     */
+    public float getDirection(int segment){
+        return (float) Math.atan2(y[segment+1]-y[segment], x[segment+1]-x[segment]);
+    }
+    public int getIterations(){
+        return iterations;
+    }
+    public float getDistance(){
+        return distance;
+    }
+
+    /**
+     * Moves the joints so the chain end reaches the target, joint 0 stays in place.
+     * @return true if the end is within {@link #tolerance} of the target
+     */
+    public boolean solve(float targetX, float targetY){
+        iterations = 0;
+        startX = x[0];
+        startY = y[0];
+        if(segments == 0){
+            distance = (float) Math.hypot(targetX-x[0], targetY-y[0]);
+            return distance <= tolerance;
+        }
+        distance = (float) Math.hypot(targetX-x[segments], targetY-y[segments]);
+        if(distance <= tolerance)
+            return true;
+        if(segments == 2 && solveTwoBone(targetX, targetY))
+            return distance <= tolerance;
+        float previousDistance = Float.POSITIVE_INFINITY;
+        while(iterations < maxIterations && distance > tolerance){
+            iterations++;
+            forward(targetX, targetY);
+            backward();
+            distance = (float) Math.hypot(targetX-x[segments], targetY-y[segments]);
+            //stop once an unreachable target no longer gets closer
+            if(previousDistance-distance < tolerance*0.01f)
+                break;
+            previousDistance = distance;
+        }
+        return distance <= tolerance;
+    }
+    /**
+     * Law of cosines, keeping the side the chain is currently bent to unless the limits of joint 1 only allow the other one.
+     * @return false if the solution violates the limits, the joints are unchanged then
+     */
+    private boolean solveTwoBone(float targetX, float targetY){
+        float first = lengths[0];
+        float second = lengths[1];
+        float dx = targetX-x[0];
+        float dy = targetY-y[0];
+        float reach = (float) Math.sqrt(dx*dx + dy*dy);
+        if(first == 0 || second == 0 || reach == 0)
+            return false;
+        float clampedReach = Math.max(Math.abs(first-second), Math.min(first+second, reach));
+        float cosBend = (first*first + second*second - clampedReach*clampedReach)/(2*first*second);
+        float bend = (float) Math.PI - (float) Math.acos(Math.max(-1, Math.min(1, cosBend)));
+        if(wrap(getDirection(1)-getDirection(0)) < 0)
+            bend = -bend;
+        if(bend < minAngles[1] || bend > maxAngles[1])
+            bend = -bend;
+        if(bend < minAngles[1] || bend > maxAngles[1])
+            return false;
+        float cosInner = (first*first + clampedReach*clampedReach - second*second)/(2*first*clampedReach);
+        float inner = (float) Math.acos(Math.max(-1, Math.min(1, cosInner)));
+        float direction = (float) Math.atan2(dy, dx) + (bend > 0 ? -inner : inner);
+        float relative = (float) Math.atan2(baseDirectionX*Math.sin(direction) - baseDirectionY*Math.cos(direction),
+            baseDirectionX*Math.cos(direction) + baseDirectionY*Math.sin(direction));
+        if(relative < minAngles[0] || relative > maxAngles[0])
+            return false;
+        iterations = 1;
+        x[1] = x[0] + (float) Math.cos(direction)*first;
+        y[1] = y[0] + (float) Math.sin(direction)*first;
+        x[2] = x[1] + (float) Math.cos(direction+bend)*second;
+        y[2] = y[1] + (float) Math.sin(direction+bend)*second;
+        distance = (float) Math.hypot(targetX-x[2], targetY-y[2]);
+        return true;
+    }
+    /**
+     * Places the end on the target and every joint on the line to its inner neighbour,
+     * limiting segments by the angle of the next outer segment.
+     */
+    private void forward(float targetX, float targetY){
+        x[segments] = targetX;
+        y[segments] = targetY;
+        float outerX = 0, outerY = 0;
+        for(int i = segments-1;i >= 0;i--){
+            float dx = x[i+1]-x[i];
+            float dy = y[i+1]-y[i];
+            float length = (float) Math.sqrt(dx*dx + dy*dy);
+            if(length == 0){
+                dx = 1;
+                dy = 0;
+            } else {
+                dx /= length;
+                dy /= length;
+            }
+            if(i < segments-1){
+                //the outer segment may be at most its limits away from this one, so this one may be the negated limits away from it
+                float angle = (float) Math.atan2(outerX*dy - outerY*dx, outerX*dx + outerY*dy);
+                float clamped = Math.max(-maxAngles[i+1], Math.min(-minAngles[i+1], angle));
+                if(clamped != angle){
+                    float cos = (float) Math.cos(clamped);
+                    float sin = (float) Math.sin(clamped);
+                    dx = outerX*cos - outerY*sin;
+                    dy = outerX*sin + outerY*cos;
+                }
+            }
+            x[i] = x[i+1] - dx*lengths[i];
+            y[i] = y[i+1] - dy*lengths[i];
+            outerX = dx;
+            outerY = dy;
+        }
+    }
+    /**
+     * Puts joint 0 back to the base and places every joint at its length from the inner neighbour, within its limits.
+     */
+    private void backward(){
+        x[0] = startX;
+        y[0] = startY;
+        float innerX = baseDirectionX, innerY = baseDirectionY;
+        for(int i = 0;i < segments;i++){
+            float dx = x[i+1]-x[i];
+            float dy = y[i+1]-y[i];
+            float length = (float) Math.sqrt(dx*dx + dy*dy);
+            if(length == 0){
+                dx = innerX;
+                dy = innerY;
+            } else {
+                dx /= length;
+                dy /= length;
+            }
+            float angle = (float) Math.atan2(innerX*dy - innerY*dx, innerX*dx + innerY*dy);
+            float clamped = Math.max(minAngles[i], Math.min(maxAngles[i], angle));
+            if(clamped != angle){
+                float cos = (float) Math.cos(clamped);
+                float sin = (float) Math.sin(clamped);
+                dx = innerX*cos - innerY*sin;
+                dy = innerX*sin + innerY*cos;
+            }
+            x[i+1] = x[i] + dx*lengths[i];
+            y[i+1] = y[i] + dy*lengths[i];
+            innerX = dx;
+            innerY = dy;
+        }
+    }
+    private static float wrap(float angle){
+        while(angle > Math.PI)
+            angle -= 2*Math.PI;
+        while(angle < -Math.PI)
+            angle += 2*Math.PI;
+        return angle;
+    }
+}
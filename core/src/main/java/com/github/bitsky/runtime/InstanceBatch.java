@@ -0,0 +1,290 @@
+package com.github.bitsky.runtime;
+
+import com.github.bitsky.AnimatedSprite;
+import com.github.bitsky.PoseBuffer;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Many instances of one {@link AnimationAsset} stored in structure of arrays layout, the state of instance i lives in
+ * slot i of every array. {@link #update} ticks, evaluates and composes all instances in fixed chunks on a {@link ForkJoinPool}.
+ * Every instance is processed independently by the same code, so results do not depend on the number of threads,
+ * and nothing is allocated per instance or per update.
+ * <p>
+ * IK constraint nodes the final pose comes straight out of are not solved while evaluating, their chains of all instances
+ * are solved together by an {@link IKBatch} between the evaluation and the composition.
+ */
+public class InstanceBatch {
+    public final AnimationAsset asset;
+    public final int capacity;
+    public final int chunkSize;
+    private final int nodeCount;
+    private final int propertyCount;
+    private final int boneCount;
+    /**
+     * Graph state, {@link GraphInstance} arrays of every instance placed one after another.
+     */
+    public final float[] properties;
+    public final float[] times;
+    public final int[] states;
+    public final int[] transitions;
+    public final Object[] nodeStates;
+    /**
+     * World transforms of every bone after the last update, boneCount floats per instance indexed by bone index.
+     */
+    public final float[] worldX;
+    public final float[] worldY;
+    public final float[] worldRotation;
+    public final float[] worldScale;
+    private final GraphInstance initialState;
+    /**
+     * Node indices of the deferred IK constraint nodes, innermost first.
+     */
+    private final int[] deferredIK;
+    private final IKBatch ikBatch;
+    /**
+     * Local pose of every instance between evaluation and composition, null without deferred IK nodes.
+     */
+    private final PoseBuffer[] localPoses;
+    /**
+     * First chain in {@link #ikBatch} of every instance.
+     */
+    private final int[] ikChainStarts;
+    private final Chunk[] chunks;
+    private final RecursiveAction root;
+    private int size;
+    private float step;
+    private boolean composing;
+
+    public InstanceBatch(AnimationAsset asset, int capacity, int chunkSize) {
+        this.asset = asset;
+        this.capacity = capacity;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.nodeCount = asset.graph.nodes.length;
+        this.propertyCount = asset.graph.propertyNames.length;
+        this.boneCount = asset.sprite.getBoneCapacity();
+        this.properties = new float[capacity*propertyCount];
+        this.times = new float[capacity*nodeCount];
+        this.states = new int[capacity*nodeCount];
+        this.transitions = new int[capacity*nodeCount];
+        this.nodeStates = new Object[capacity*nodeCount];
+        this.worldX = new float[capacity*boneCount];
+        this.worldY = new float[capacity*boneCount];
+        this.worldRotation = new float[capacity*boneCount];
+        this.worldScale = new float[capacity*boneCount];
+        this.initialState = new GraphInstance(asset.graph);
+        this.deferredIK = findTrailingIK(asset.graph);
+        if(deferredIK.length > 0){
+            this.ikBatch = new IKBatch(capacity*deferredIK.length, this.chunkSize*deferredIK.length);
+            this.localPoses = new PoseBuffer[capacity];
+            for(int i = 0;i < capacity;i++){
+                localPoses[i] = new PoseBuffer(boneCount);
+            }
+            this.ikChainStarts = new int[capacity];
+        } else {
+            this.ikBatch = null;
+            this.localPoses = null;
+            this.ikChainStarts = null;
+        }
+        this.chunks = new Chunk[(capacity+this.chunkSize-1)/this.chunkSize];
+        for(int i = 0;i < chunks.length;i++){
+            chunks[i] = new Chunk(i*this.chunkSize);
+        }
+        this.root = new RecursiveAction() {
+            @Override
+            protected void compute() {
+                int count = getChunkCount();
+                for(int i = 1;i < count;i++){
+                    chunks[i].reinitialize();
+                    chunks[i].fork();
+                }
+                if(count > 0){
+                    chunks[0].reinitialize();
+                    chunks[0].invoke();
+                }
+                for(int i = count-1;i >= 1;i--){
+                    chunks[i].join();
+                }
+            }
+        };
+        this.size = 0;
+    }
+    public InstanceBatch(AnimationAsset asset, int capacity) {
+        this(asset, capacity, 64);
+    }
+
+    public int size(){
+        return size;
+    }
+    /**
+     * @return slot of the new instance, starting in the initial graph state
+     * @throws IllegalStateException if the batch is full
+     */
+    public int add(){
+        if(size == capacity)
+            throw new IllegalStateException("Batch is full");
+        int instance = size++;
+        store(initialState, instance);
+        if(ikBatch != null){
+            ikChainStarts[instance] = ikBatch.size();
+            for(int node : deferredIK){
+                ikBatch.add(asset.sprite, localPoses[instance], (IKConstraintNode) asset.graph.nodes[node]);
+            }
+        }
+        return instance;
+    }
+    /**
+     * Resets instance to the initial graph state.
+     */
+    public void reset(int instance){
+        store(initialState, instance);
+        if(ikBatch != null){
+            int end = instance+1 < size ? ikChainStarts[instance+1] : ikBatch.size();
+            for(int chain = ikChainStarts[instance];chain < end;chain++){
+                ikBatch.resetWarmStart(chain);
+            }
+        }
+    }
+    /**
+     * Removes the last instance, moving instances is left to the caller.
+     */
+    public void removeLast(){
+        if(size == 0)
+            return;
+        size--;
+        if(ikBatch != null)
+            ikBatch.truncate(ikChainStarts[size]);
+    }
+    public void setProperty(int instance, int property, float value){
+        properties[instance*propertyCount+property] = value;
+    }
+    public float getProperty(int instance, int property){
+        return properties[instance*propertyCount+property];
+    }
+    /**
+     * Copies world transforms of instance after the last update into out.
+     */
+    public void getWorldPose(int instance, PoseBuffer out){
+        out.ensureCapacity(boneCount);
+        int start = instance*boneCount;
+        System.arraycopy(worldX, start, out.tx, 0, boneCount);
+        System.arraycopy(worldY, start, out.ty, 0, boneCount);
+        System.arraycopy(worldRotation, start, out.rot, 0, boneCount);
+        System.arraycopy(worldScale, start, out.scale, 0, boneCount);
+        for(int i = 0;i < boneCount;i++){
+            out.mask[i] = PoseBuffer.ALL;
+        }
+    }
+
+    public void update(float step){
+        update(step, ForkJoinPool.commonPool());
+    }
+    public void update(float step, ForkJoinPool pool){
+        this.step = step;
+        this.composing = false;
+        run(pool);
+        if(ikBatch == null)
+            return;
+        ikBatch.solve(pool);
+        this.composing = true;
+        run(pool);
+    }
+    private void run(ForkJoinPool pool){
+        if(getChunkCount() == 1){
+            chunks[0].compute();
+            return;
+        }
+        root.reinitialize();
+        pool.invoke(root);
+    }
+    private int getChunkCount(){
+        return (size+chunkSize-1)/chunkSize;
+    }
+
+    /**
+     * @return IK constraint nodes whose output only feeds the final pose, directly or through each other, innermost first
+     */
+    private static int[] findTrailingIK(GraphDefinition graph){
+        NodeDefinition[] nodes = graph.nodes;
+        int[] consumers = new int[nodes.length];
+        for(NodeDefinition node : nodes){
+            for(int input : node.inputs){
+                consumers[input]++;
+            }
+        }
+        int[] found = new int[nodes.length];
+        int count = 0;
+        int node = nodes[nodes.length-1].getInput("Out");
+        while(node != -1 && nodes[node] instanceof IKConstraintNode && consumers[node] == 1){
+            found[count++] = node;
+            node = nodes[node].getInput("Input");
+        }
+        int[] trailing = new int[count];
+        for(int i = 0;i < count;i++){
+            trailing[i] = found[count-1-i];
+        }
+        return trailing;
+    }
+
+    private void load(GraphInstance graph, int instance){
+        System.arraycopy(properties, instance*propertyCount, graph.properties, 0, propertyCount);
+        System.arraycopy(times, instance*nodeCount, graph.times, 0, nodeCount);
+        System.arraycopy(states, instance*nodeCount, graph.states, 0, nodeCount);
+        System.arraycopy(transitions, instance*nodeCount, graph.transitions, 0, nodeCount);
+        System.arraycopy(nodeStates, instance*nodeCount, graph.nodeStates, 0, nodeCount);
+    }
+    private void store(GraphInstance graph, int instance){
+        System.arraycopy(graph.properties, 0, properties, instance*propertyCount, propertyCount);
+        System.arraycopy(graph.times, 0, times, instance*nodeCount, nodeCount);
+        System.arraycopy(graph.states, 0, states, instance*nodeCount, nodeCount);
+        System.arraycopy(graph.transitions, 0, transitions, instance*nodeCount, nodeCount);
+        System.arraycopy(graph.nodeStates, 0, nodeStates, instance*nodeCount, nodeCount);
+    }
+
+    /**
+     * Fixed range of slots with its own scratch graph instance, evaluator and world pose. With deferred IK nodes it runs twice
+     * per update, evaluating into {@link #localPoses} and composing them after the IK solve.
+     */
+    private class Chunk extends RecursiveAction {
+        private final int start;
+        private final GraphInstance graph;
+        private final GraphEvaluator evaluator;
+        private final PoseBuffer world;
+        public Chunk(int start) {
+            this.start = start;
+            this.graph = new GraphInstance(asset.graph);
+            this.evaluator = new GraphEvaluator(asset.graph);
+            this.world = new PoseBuffer(boneCount);
+            for(int node : deferredIK){
+                evaluator.setDeferred(node, true);
+            }
+        }
+        @Override
+        protected void compute() {
+            AnimatedSprite sprite = asset.sprite;
+            int end = Math.min(start+chunkSize, size);
+            for(int i = start;i < end;i++){
+                if(composing){
+                    localPoses[i].computeWorldInto(sprite, world);
+                } else {
+                    load(graph, i);
+                    graph.tick(step);
+                    PoseBuffer pose = evaluator.evaluate(graph, sprite);
+                    graph.endFrame();
+                    store(graph, i);
+                    if(localPoses != null){
+                        localPoses[i].copyFrom(pose);
+                        continue;
+                    }
+                    pose.computeWorldInto(sprite, world);
+                }
+                int offset = i*boneCount;
+                System.arraycopy(world.tx, 0, worldX, offset, boneCount);
+                System.arraycopy(world.ty, 0, worldY, offset, boneCount);
+                System.arraycopy(world.rot, 0, worldRotation, offset, boneCount);
+                System.arraycopy(world.scale, 0, worldScale, offset, boneCount);
+            }
+        }
+    }
+}
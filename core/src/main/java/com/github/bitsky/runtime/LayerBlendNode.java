@@ -0,0 +1,242 @@
+package com.github.bitsky.runtime;
+
+import com.github.bitsky.AnimatedSprite;
+import com.github.bitsky.AnimatedSpriteBone;
+import com.github.bitsky.PoseBuffer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Applies layers, usually state machines, over the "Base" input in order, each with a weight, an override or additive
+ * mode and optionally a bone mask. Layers without weight or without masked bones are neither evaluated nor blended.
+ * The input of a layer is named by its id.
+ */
+public class LayerBlendNode extends NodeDefinition {
+    public Layer[] layers = new Layer[0];
+    private int base = -1;
+    /**
+     * Input position of every layer, -1 if it is not connected.
+     */
+    private int[] layerInputs = new int[0];
+    private volatile Masks masks;
+    @Override
+    public String getTypeName() {
+        return "Layer Blend";
+    }
+    @Override
+    public void load(JSONObject json) {
+        super.load(json);
+        JSONArray layersJson = json.getJSONArray("layers");
+        this.layers = new Layer[layersJson.length()];
+        for(int i = 0;i < layers.length;i++){
+            layers[i] = Layer.load(layersJson.getJSONObject(i));
+        }
+    }
+    @Override
+    public void link(GraphDefinition definition) {
+        base = -1;
+        layerInputs = new int[layers.length];
+        for(int i = 0;i < layers.length;i++){
+            layers[i].weight.link(definition);
+            layerInputs[i] = -1;
+        }
+        for(int i = 0;i < inputNames.length;i++){
+            if(inputNames[i].equals("Base"))
+                base = i;
+            for(int j = 0;j < layers.length;j++){
+                if(inputNames[i].equals(layers[j].id.toString()))
+                    layerInputs[j] = i;
+            }
+        }
+    }
+    public Masks getMasks(AnimatedSprite sprite){
+        Masks masks = this.masks;
+        if(masks == null || !masks.isCurrent(sprite)){
+            UUID[][] roots = new UUID[layers.length][];
+            for(int i = 0;i < layers.length;i++){
+                roots[i] = layers[i].mask;
+            }
+            masks = Masks.resolve(sprite, roots);
+            this.masks = masks;
+        }
+        return masks;
+    }
+    private Blend getBlend(GraphEvaluator evaluator){
+        Blend blend = (Blend) evaluator.nodeScratch[index];
+        if(blend == null){
+            blend = new Blend();
+            evaluator.nodeScratch[index] = blend;
+        }
+        return blend;
+    }
+    /**
+     * @return weight at least 0, override layers at most 1
+     */
+    public static float clampWeight(float weight, boolean additive){
+        weight = Math.max(0, weight);
+        return additive ? weight : Math.min(1, weight);
+    }
+
+    @Override
+    public void prepare(GraphInstance instance, GraphEvaluator evaluator, AnimatedSprite sprite) {
+        Blend blend = getBlend(evaluator);
+        blend.begin(getMasks(sprite), layers.length);
+        for(int i = 0;i < layers.length;i++){
+            if(layerInputs[i] != -1)
+                blend.setWeight(i, layers[i].weight.evaluate(instance), layers[i].additive);
+        }
+    }
+    @Override
+    public boolean needsInput(GraphInstance instance, GraphEvaluator evaluator, int input) {
+        if(input == base)
+            return true;
+        for(int i = 0;i < layers.length;i++){
+            if(layerInputs[i] == input)
+                return getBlend(evaluator).isActive(i);
+        }
+        return false;
+    }
+    @Override
+    public void evaluate(GraphInstance instance, GraphEvaluator evaluator, AnimatedSprite sprite, PoseBuffer out) {
+        Blend blend = getBlend(evaluator);
+        for(int i = 0;i < layers.length;i++){
+            if(blend.isActive(i))
+                blend.add(i, evaluator.getPose(inputs[layerInputs[i]]), layers[i].additive);
+        }
+        blend.blend(sprite, base == -1 ? evaluator.getEmptyPose() : evaluator.getPose(inputs[base]), out);
+    }
+
+    public static class Layer {
+        public final UUID id;
+        public final ParameterExpression weight;
+        public final boolean additive;
+        /**
+         * Bones whose subtrees the layer affects, empty for the whole skeleton.
+         */
+        public final UUID[] mask;
+        public Layer(UUID id, ParameterExpression weight, boolean additive, UUID[] mask) {
+            this.id = id;
+            this.weight = weight;
+            this.additive = additive;
+            this.mask = mask;
+        }
+        public static Layer load(JSONObject json){
+            JSONArray maskJson = json.getJSONArray("mask");
+            UUID[] mask = new UUID[maskJson.length()];
+            for(int i = 0;i < mask.length;i++){
+                mask[i] = UUID.fromString(maskJson.getString(i));
+            }
+            return new Layer(UUID.fromString(json.getString("id")), new ParameterExpression(json.getString("weight")), json.getBoolean("additive"), mask);
+        }
+    }
+
+    /**
+     * Weight of every bone index for every layer, 1 inside the masked subtrees and 0 elsewhere.
+     */
+    public static class Masks extends BoneBinding {
+        /**
+         * Null for layers without mask.
+         */
+        public final float[][] boneWeights;
+        private final boolean[] empty;
+        private Masks(AnimatedSprite sprite, float[][] boneWeights, boolean[] empty) {
+            super(sprite);
+            this.boneWeights = boneWeights;
+            this.empty = empty;
+        }
+        /**
+         * @param roots subtree roots of every layer, empty for layers without mask
+         */
+        public static Masks resolve(AnimatedSprite sprite, UUID[][] roots){
+            float[][] boneWeights = new float[roots.length][];
+            boolean[] empty = new boolean[roots.length];
+            int[] order = sprite.getBoneOrder();
+            for(int i = 0;i < roots.length;i++){
+                if(roots[i].length == 0)
+                    continue;
+                boneWeights[i] = new float[sprite.getBoneCapacity()];
+                empty[i] = true;
+                for(UUID root : roots[i]){
+                    AnimatedSpriteBone bone = sprite.bones.get(root);
+                    if(bone == null)
+                        continue;
+                    for(int position = sprite.getOrderPosition(bone.index);position < sprite.getSubtreeEnd(bone.index);position++){
+                        boneWeights[i][order[position]] = 1;
+                    }
+                    empty[i] = false;
+                }
+            }
+            return new Masks(sprite, boneWeights, empty);
+        }
+        /**
+         * @return true if the layer has a mask but none of its bones exist
+         */
+        public boolean isEmpty(int layer){
+            return empty[layer];
+        }
+        @Override
+        public boolean isValid(){
+            return true;
+        }
+    }
+
+    /**
+     * Layer weights of one evaluation, computed once before the inputs are chosen, and the active layers blended with them.
+     */
+    private static class Blend {
+        private Masks masks;
+        private float[] layerWeights = new float[0];
+        private PoseBuffer[] poses = new PoseBuffer[0];
+        private float[] weights = new float[0];
+        private boolean[] additive = new boolean[0];
+        private float[][] boneWeights = new float[0][];
+        private int count;
+        /**
+         * Starts an evaluation with all layers inactive.
+         */
+        public void begin(Masks masks, int layers){
+            this.masks = masks;
+            if(layerWeights.length < layers){
+                layerWeights = new float[layers];
+                poses = new PoseBuffer[layers];
+                weights = new float[layers];
+                additive = new boolean[layers];
+                boneWeights = new float[layers][];
+            }
+            Arrays.fill(layerWeights, 0);
+            count = 0;
+        }
+        /**
+         * Sets the weight of layer clamped to its mode, layers whose mask matches no bones stay inactive.
+         */
+        public void setWeight(int layer, float weight, boolean additive){
+            layerWeights[layer] = masks.isEmpty(layer) ? 0 : clampWeight(weight, additive);
+        }
+        /**
+         * @return true if the input of layer has to be evaluated and added
+         */
+        public boolean isActive(int layer){
+            return layerWeights[layer] > 0;
+        }
+        /**
+         * Adds pose of an active layer, layers are applied in the order they are added.
+         */
+        public void add(int layer, PoseBuffer pose, boolean additive){
+            poses[count] = pose;
+            weights[count] = layerWeights[layer];
+            this.additive[count] = additive;
+            boneWeights[count] = masks.boneWeights[layer];
+            count++;
+        }
+        /**
+         * Applies the added layers over base into out.
+         */
+        public void blend(AnimatedSprite sprite, PoseBuffer base, PoseBuffer out){
+            base.blendLayers(sprite, poses, weights, additive, boneWeights, count, out);
+            count = 0;
+        }
+    }
+}
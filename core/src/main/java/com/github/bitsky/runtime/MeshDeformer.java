@@ -0,0 +1,37 @@
+package com.github.bitsky.runtime;
+
+import com.github.bitsky.PoseBuffer;
+
+/**
+ * Scratch memory for skinning the meshes of an {@link AnimationAsset}, one deformer per thread is enough for any number of instances.
+ */
+public class MeshDeformer {
+    public final AnimationAsset asset;
+    private final PoseBuffer world;
+    private final float[] boneMatrices;
+    private final float[][] vertices;
+
+    public MeshDeformer(AnimationAsset asset) {
+        this.asset = asset;
+        int capacity = asset.sprite.getBoneCapacity();
+        this.world = new PoseBuffer(capacity);
+        this.boneMatrices = new float[capacity*6];
+        this.vertices = new float[asset.meshes.length][];
+        for(int i = 0;i < vertices.length;i++){
+            vertices[i] = new float[asset.meshes[i].getVertexCount()*2];
+        }
+    }
+    /**
+     * Computes the bone matrices used by {@link #deform} for pose.
+     */
+    public void setPose(PoseBuffer pose){
+        asset.sprite.computeSkinningMatrices(pose, world, boneMatrices);
+    }
+    /**
+     * @return deformed vertices of the mesh, valid until the next call with the same mesh
+     */
+    public float[] deform(int mesh){
+        asset.meshes[mesh].deform(boneMatrices, vertices[mesh]);
+        return vertices[mesh];
+    }
+}
@@ -0,0 +1,26 @@
+package com.github.bitsky.runtime;
+
+import com.github.bitsky.AnimatedSprite;
+import com.github.bitsky.PoseBuffer;
+import org.json.JSONObject;
+
+public class MultiplyPoseNode extends NodeDefinition {
+    public ParameterExpression multiplyValue = new ParameterExpression("1");
+    @Override
+    public String getTypeName() {
+        return "Multiply Pose";
+    }
+    @Override
+    public void load(JSONObject json) {
+        super.load(json);
+        this.multiplyValue = new ParameterExpression(json.getString("multiplyValue"));
+    }
+    @Override
+    public void link(GraphDefinition definition) {
+        multiplyValue.link(definition);
+    }
+    @Override
+    public void evaluate(GraphInstance instance, GraphEvaluator evaluator, AnimatedSprite sprite, PoseBuffer out) {
+        getInputPose(evaluator, "Pose").scaleInto(multiplyValue.evaluate(instance), out);
+    }
+}
@@ -0,0 +1,103 @@
+package com.github.bitsky.runtime;
+
+import com.github.bitsky.AnimatedSprite;
+import com.github.bitsky.PoseBuffer;
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.UUID;
+
+/**
+ * Settings of one graph node without any editor widgets. Definitions are shared by all {@link GraphInstance}s of a graph,
+ * state that changes while playing is kept in the instance.
+ */
+public abstract class NodeDefinition {
+    public UUID id;
+    /**
+     * Position in {@link GraphDefinition#nodes}.
+     */
+    public int index;
+    public String[] inputNames;
+    /**
+     * Node index of every connected input, aligned with {@link #inputNames}.
+     */
+    public int[] inputs;
+    public final LinkedHashMap<String, UUID> inputIds;
+    public NodeDefinition() {
+        this.inputNames = new String[0];
+        this.inputs = new int[0];
+        this.inputIds = new LinkedHashMap<>();
+    }
+    public abstract String getTypeName();
+    public void load(JSONObject json){
+        inputIds.clear();
+        JSONObject inputsJson = json.getJSONObject("inputs");
+        for(String name : inputsJson.keySet()){
+            inputIds.put(name, UUID.fromString(inputsJson.getString(name)));
+        }
+    }
+    /**
+     * Called once all nodes are loaded and {@link #inputs} are resolved.
+     */
+    public void link(GraphDefinition definition){}
+
+    /**
+     * @return node index of the input or -1 if it is not connected
+     */
+    public int getInput(String name){
+        for(int i = 0;i < inputNames.length;i++){
+            if(inputNames[i].equals(name))
+                return inputs[i];
+        }
+        return -1;
+    }
+    /**
+     * @return evaluated pose of the input or an empty pose, must not be modified
+     */
+    public PoseBuffer getInputPose(GraphEvaluator evaluator, String name){
+        int input = getInput(name);
+        return input == -1 ? evaluator.getEmptyPose() : evaluator.getPose(input);
+    }
+
+    /**
+     * Called once per evaluation before {@link #needsInput} if the final pose depends on this node, for values both
+     * {@link #needsInput} and {@link #evaluate} use. They can be kept in {@link GraphEvaluator#nodeScratch}.
+     */
+    public void prepare(GraphInstance instance, GraphEvaluator evaluator, AnimatedSprite sprite){}
+    /**
+     * Writes the output pose into out, all inputs reported by {@link #needsInput} are already evaluated by evaluator.
+     */
+    public abstract void evaluate(GraphInstance instance, GraphEvaluator evaluator, AnimatedSprite sprite, PoseBuffer out);
+    /**
+     * @param input position in {@link #inputs}
+     */
+    public boolean needsInput(GraphInstance instance, GraphEvaluator evaluator, int input){
+        return true;
+    }
+    public void tick(GraphInstance instance, float step){
+        for(int input : inputs){
+            instance.tickNode(input, step);
+        }
+    }
+    public void reset(GraphInstance instance){
+        for(int input : inputs){
+            instance.resetNode(input);
+        }
+    }
+    /**
+     * Takes over the state previous, this node in an earlier definition of the graph, has in from.
+     */
+    public void copyState(GraphInstance from, NodeDefinition previous, GraphInstance to){
+        to.times[index] = from.times[previous.index];
+        to.states[index] = from.states[previous.index];
+        to.transitions[index] = from.transitions[previous.index];
+        to.nodeStates[index] = from.nodeStates[previous.index];
+    }
+    public boolean isFinished(GraphInstance instance){
+        for(int input : inputs){
+            if(instance.isNodeFinished(input))
+                return true;
+        }
+        return inputs.length == 0;
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.bitsky.runtime;
+
+import com.github.bitsky.CompiledExpression;
+import com.github.bitsky.ExpressionCompiler;
+import net.objecthunter.exp4j.Expression;
+import net.objecthunter.exp4j.ExpressionBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Node parameter formula bound to the properties of a {@link GraphDefinition}, compiled once when the graph is linked.
+ * Formulas the {@link ExpressionCompiler} does not support are evaluated by exp4j, invalid formulas evaluate to 0.
+ * exp4j expressions hold their variable values, so every {@link GraphInstance} evaluates its own copy.
+ */
+public class ParameterExpression {
+    public final String text;
+    private CompiledExpression compiled;
+    private Expression fallback;
+    /**
+     * Property index of every variable slot.
+     */
+    private int[] properties;
+    private String[] names;
+
+    public ParameterExpression(String text) {
+        this.text = text;
+        this.properties = new int[0];
+        this.names = new String[0];
+    }
+    public void link(GraphDefinition definition){
+        ArrayList<String> propertyNames = new ArrayList<>();
+        for(String name : definition.propertyNames){
+            if(!propertyNames.contains(name))
+                propertyNames.add(name);
+        }
+        compiled = null;
+        fallback = null;
+        ExpressionCompiler.Compiled result = ExpressionCompiler.compile(text, propertyNames);
+        if(result != null){
+            compiled = result.expression;
+            names = result.variables;
+        } else {
+            try {
+                fallback = new ExpressionBuilder(text).variables(propertyNames.toArray(new String[0])).build();
+                names = fallback.getVariableNames().toArray(new String[0]);
+            } catch (Exception e){
+                fallback = null;
+                names = new String[0];
+            }
+        }
+        properties = Arrays.stream(names).mapToInt(definition::getPropertyIndex).toArray();
+    }
+    public float evaluate(GraphInstance instance){
+        if(compiled != null){
+            float[] values = instance.expressionValues;
+            for(int i = 0;i < properties.length;i++){
+                values[i] = instance.properties[properties[i]];
+            }
+            float value = compiled.evaluate(values);
+            return Float.isFinite(value) ? value : 0;
+        }
+        if(fallback == null)
+            return 0;
+        Expression expression = instance.getExpression(fallback);
+        for(int i = 0;i < properties.length;i++){
+            expression.setVariable(names[i], instance.properties[properties[i]]);
+        }
+        try {
+            return (float) expression.evaluate();
+        } catch (Exception e){
+            return 0;
+        }
+    }
+}
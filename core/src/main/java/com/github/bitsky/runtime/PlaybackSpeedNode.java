@@ -0,0 +1,32 @@
+package com.github.bitsky.runtime;
+
+import com.github.bitsky.AnimatedSprite;
+import com.github.bitsky.PoseBuffer;
+import org.json.JSONObject;
+
+public class PlaybackSpeedNode extends NodeDefinition {
+    public ParameterExpression speed = new ParameterExpression("1");
+    @Override
+    public String getTypeName() {
+        return "Playback Speed";
+    }
+    @Override
+    public void load(JSONObject json) {
+        super.load(json);
+        this.speed = new ParameterExpression(json.getString("speed"));
+    }
+    @Override
+    public void link(GraphDefinition definition) {
+        speed.link(definition);
+    }
+    @Override
+    public void tick(GraphInstance instance, float step) {
+        int input = getInput("Pose");
+        if(input != -1)
+            instance.tickNode(input, step*speed.evaluate(instance));
+    }
+    @Override
+    public void evaluate(GraphInstance instance, GraphEvaluator evaluator, AnimatedSprite sprite, PoseBuffer out) {
+        out.copyFrom(getInputPose(evaluator, "Pose"));
+    }
+}
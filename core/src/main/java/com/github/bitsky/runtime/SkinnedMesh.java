@@ -0,0 +1,72 @@
+package com.github.bitsky.runtime;
+
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Vector3;
+import com.github.bitsky.AnimatedSprite;
+import com.github.bitsky.VertexedImage;
+
+/**
+ * Immutable skinning data of one {@link VertexedImage}, points are stored already transformed into bind pose world space.
+ */
+public class SkinnedMesh {
+    public final String name;
+    public final Texture texture;
+    /**
+     * Undeformed points in image space, two floats per point, usable as texture coordinates.
+     */
+    public final float[] imageVertices;
+    public final float[] bindVertices;
+    public final short[] triangles;
+    private final int[] influenceCounts;
+    private final int[] influenceBones;
+    private final float[] influenceWeights;
+
+    public SkinnedMesh(AnimatedSprite sprite, VertexedImage image) {
+        this.name = image.name;
+        this.texture = image.texture;
+        int count = image.points.size();
+        this.imageVertices = new float[count*2];
+        this.bindVertices = new float[count*2];
+        Matrix4 transformMatrix = image.getTransformMatrix();
+        Vector3 vertex = new Vector3();
+        for(int i = 0;i < count;i++){
+            VertexedImage.Vertex point = image.points.get(i);
+            imageVertices[i*2] = point.position.x;
+            imageVertices[i*2+1] = point.position.y;
+            vertex.set(point.position.x, point.position.y, 0);
+            vertex.prj(transformMatrix);
+            bindVertices[i*2] = vertex.x;
+            bindVertices[i*2+1] = vertex.y;
+        }
+        this.triangles = image.getTriangles().toArray();
+        this.influenceCounts = image.getInfluenceCounts(sprite).clone();
+        this.influenceBones = image.getInfluenceBones(sprite).clone();
+        this.influenceWeights = image.getInfluenceWeights(sprite).clone();
+    }
+    public int getVertexCount(){
+        return influenceCounts.length;
+    }
+    /**
+     * Skins all points, see {@link AnimatedSprite#computeSkinningMatrices}.
+     * @param out two floats per point
+     */
+    public void deform(float[] boneMatrices, float[] out){
+        for(int i = 0;i < influenceCounts.length;i++){
+            float x = bindVertices[i*2];
+            float y = bindVertices[i*2+1];
+            float outputX = 0;
+            float outputY = 0;
+            int start = i*VertexedImage.MAX_INFLUENCES;
+            int end = start+influenceCounts[i];
+            for(int j = start;j < end;j++){
+                int m = influenceBones[j]*6;
+                float weight = influenceWeights[j];
+                outputX += (boneMatrices[m]*x + boneMatrices[m+1]*y + boneMatrices[m+2])*weight;
+                outputY += (boneMatrices[m+3]*x + boneMatrices[m+4]*y + boneMatrices[m+5])*weight;
+            }
+            out[i*2] = outputX;
+            out[i*2+1] = outputY;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.github.bitsky.runtime;
+
+import com.github.bitsky.AnimatedSprite;
+import com.github.bitsky.AnimationStateMachine;
+import com.github.bitsky.PoseBuffer;
+import org.json.JSONObject;
+
+/**
+ * Runs a {@link CompiledStateMachine}, the transitions of the current state are only checked again after a property they
+ * read changed, the state changed or it finished while it has transitions requiring that.
+ * {@link GraphInstance#transitions} holds the running transition in the transition table of the compiled machine.
+ */
+public class StateMachineNode extends NodeDefinition {
+    public final AnimationStateMachine stateMachine;
+    private CompiledStateMachine machine;
+    /**
+     * Node index connected to every state, -1 if none.
+     */
+    private int[] stateInputs;
+    public StateMachineNode() {
+        this.stateMachine = new AnimationStateMachine();
+        this.stateInputs = new int[0];
+    }
+    @Override
+    public String getTypeName() {
+        return "State Machine";
+    }
+    @Override
+    public void load(JSONObject json) {
+        super.load(json);
+        this.stateMachine.load(json.getJSONObject("stateMachine"));
+    }
+    @Override
+    public void link(GraphDefinition definition) {
+        machine = CompiledStateMachine.compile(stateMachine, definition::getPropertyIndex);
+        stateInputs = new int[machine.getStateCount()];
+        for(int i = 0;i < stateInputs.length;i++){
+            stateInputs[i] = getInput(machine.stateIds[i].toString());
+        }
+    }
+
+    @Override
+    public void reset(GraphInstance instance) {
+        instance.states[index] = machine.startState;
+        instance.transitions[index] = -1;
+        if(instance.nodeStates[index] != null)
+            ((CompiledStateMachine.Trigger) instance.nodeStates[index]).invalidate();
+        int input = machine.startState == -1 ? -1 : stateInputs[machine.startState];
+        if(input != -1)
+            instance.resetNode(input);
+    }
+    /**
+     * Keeps the current state if it still exists, a running transition is completed as the transition tables may differ.
+     */
+    @Override
+    public void copyState(GraphInstance from, NodeDefinition previous, GraphInstance to) {
+        CompiledStateMachine previousMachine = ((StateMachineNode) previous).machine;
+        int state = from.states[previous.index];
+        int transition = from.transitions[previous.index];
+        if(transition != -1)
+            state = previousMachine.targets[transition];
+        int current = state == -1 ? -1 : machine.getStateIndex(previousMachine.stateIds[state]);
+        if(current == -1)
+            return;
+        to.states[index] = current;
+        to.transitions[index] = -1;
+    }
+    @Override
+    public void tick(GraphInstance instance, float step) {
+        int current = instance.states[index];
+        int input = current == -1 ? -1 : stateInputs[current];
+        if(input == -1)
+            return;
+        instance.tickNode(input, step);
+        int running = instance.transitions[index];
+        if(running != -1){
+            instance.times[index] += step;
+            if(instance.times[index] > machine.blendTimes[running]){
+                instance.states[index] = machine.targets[running];
+                instance.transitions[index] = -1;
+                //conditions are checked again even if nothing changed, so self transitions can repeat
+                CompiledStateMachine.Trigger trigger = (CompiledStateMachine.Trigger) instance.nodeStates[index];
+                if(trigger != null)
+                    trigger.invalidate();
+            }
+            return;
+        }
+        CompiledStateMachine.Trigger trigger = (CompiledStateMachine.Trigger) instance.nodeStates[index];
+        if(trigger == null){
+            trigger = machine.createTrigger();
+            instance.nodeStates[index] = trigger;
+        }
+        boolean finished = machine.waitsForFinished[current] && instance.isNodeFinished(input);
+        if(!machine.update(trigger, current, instance.properties, finished))
+            return;
+        int transition = machine.findTransition(current, instance.properties, finished);
+        if(transition == -1)
+            return;
+        instance.transitions[index] = transition;
+        instance.times[index] = 0;
+        int targetInput = stateInputs[machine.targets[transition]];
+        if(targetInput != -1 && machine.resets[transition])
+            instance.resetNode(targetInput);
+    }
+    @Override
+    public boolean isFinished(GraphInstance instance) {
+        int current = instance.states[index];
+        if(current == -1 || stateInputs[current] == -1)
+            return true;
+        return instance.isNodeFinished(stateInputs[current]) && machine.endStates[current];
+    }
+    @Override
+    public boolean needsInput(GraphInstance instance, GraphEvaluator evaluator, int input) {
+        int current = instance.states[index];
+        if(current == -1)
+            return false;
+        if(inputs[input] == stateInputs[current])
+            return true;
+        int transition = instance.transitions[index];
+        return transition != -1 && inputs[input] == stateInputs[machine.targets[transition]];
+    }
+    @Override
+    public void evaluate(GraphInstance instance, GraphEvaluator evaluator, AnimatedSprite sprite, PoseBuffer out) {
+        int current = instance.states[index];
+        int first = current == -1 ? -1 : stateInputs[current];
+        if(first == -1){
+            out.copyFrom(evaluator.getEmptyPose());
+            return;
+        }
+        int transition = instance.transitions[index];
+        if(transition != -1){
+            int second = stateInputs[machine.targets[transition]];
+            if(second != -1){
+                evaluator.getPose(first).lerpInto(evaluator.getPose(second), machine.interpolationFunctions[transition].apply(instance.times[index]/machine.blendTimes[transition]), out);
+                return;
+            }
+        }
+        out.copyFrom(evaluator.getPose(first));
+    }
+}
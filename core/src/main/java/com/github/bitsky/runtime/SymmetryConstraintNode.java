@@ -0,0 +1,92 @@
+package com.github.bitsky.runtime;
+
+import com.github.bitsky.AnimatedSprite;
+import com.github.bitsky.AnimatedSpriteBone;
+import com.github.bitsky.PoseBuffer;
+import org.json.JSONObject;
+
+import java.util.UUID;
+
+public class SymmetryConstraintNode extends NodeDefinition {
+    public UUID projected;
+    public UUID center;
+    public UUID target;
+    private volatile Bones bones;
+    @Override
+    public String getTypeName() {
+        return "Symmetry Constraint";
+    }
+    @Override
+    public void load(JSONObject json) {
+        super.load(json);
+        this.projected = json.has("projected") ? UUID.fromString(json.getString("projected")) : null;
+        this.center = json.has("center") ? UUID.fromString(json.getString("center")) : null;
+        this.target = json.has("target") ? UUID.fromString(json.getString("target")) : null;
+    }
+    @Override
+    public void evaluate(GraphInstance instance, GraphEvaluator evaluator, AnimatedSprite sprite, PoseBuffer out) {
+        solve(sprite, getInputPose(evaluator, "Input"), getBones(sprite), evaluator.getScratchPose(), out);
+    }
+    /**
+     * @return bones of projected, center and target in sprite, resolved again only after the hierarchy changed
+     */
+    public Bones getBones(AnimatedSprite sprite){
+        Bones bones = this.bones;
+        if(bones == null || !bones.isCurrent(sprite)){
+            bones = Bones.resolve(sprite, projected, center, target);
+            this.bones = bones;
+        }
+        return bones;
+    }
+
+    /**
+     * Places projected so it mirrors target around center. World transforms are computed only for center, target
+     * and the parent of projected and their ancestors.
+     * @param world scratch for world transforms, must not be input or out
+     */
+    public static void solve(AnimatedSprite sprite, PoseBuffer input, Bones bones, PoseBuffer world, PoseBuffer out){
+        out.copyFrom(input);
+        if(!bones.isValid())
+            return;
+        //projected is placed from its base translation in case center or target are below it
+        out.mask[bones.projected] &= ~PoseBuffer.TRANSLATION;
+        out.computeWorldOf(sprite, bones.center, world);
+        out.computeWorldOf(sprite, bones.target, world);
+        out.computeWorldOf(sprite, bones.parent, world);
+        float x = world.tx[bones.center]*2 - world.tx[bones.target];
+        float y = world.ty[bones.center]*2 - world.ty[bones.target];
+        float cos = (float) Math.cos(-world.rot[bones.parent]);
+        float sin = (float) Math.sin(-world.rot[bones.parent]);
+        float scale = world.scale[bones.parent];
+        out.setTranslation(bones.projected, (x*cos - y*sin)/scale - world.tx[bones.parent], (x*sin + y*cos)/scale - world.ty[bones.parent]);
+    }
+
+    /**
+     * Bone indices of projected, its parent, center and target.
+     */
+    public static class Bones extends BoneBinding {
+        public final int projected;
+        public final int parent;
+        public final int center;
+        public final int target;
+        private Bones(AnimatedSprite sprite, int projected, int parent, int center, int target) {
+            super(sprite);
+            this.projected = projected;
+            this.parent = parent;
+            this.center = center;
+            this.target = target;
+        }
+        public static Bones resolve(AnimatedSprite sprite, UUID projected, UUID center, UUID target){
+            AnimatedSpriteBone projectedBone = projected == null ? null : sprite.bones.get(projected);
+            AnimatedSpriteBone centerBone = center == null ? null : sprite.bones.get(center);
+            AnimatedSpriteBone targetBone = target == null ? null : sprite.bones.get(target);
+            if(projectedBone == null || centerBone == null || targetBone == null || projected.equals(center) || center.equals(target) || target.equals(projected))
+                return new Bones(sprite, -1, -1, -1, -1);
+            return new Bones(sprite, projectedBone.index, sprite.getParentIndices()[projectedBone.index], centerBone.index, targetBone.index);
+        }
+        @Override
+        public boolean isValid(){
+            return parent != -1;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.bitsky.headless;
+
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import com.github.bitsky.AnimatedSprite;
+import com.github.bitsky.AnimatedSpriteBone;
+import com.github.bitsky.BakedClip;
+import com.github.bitsky.CompressedClip;
+import com.github.bitsky.ProjectFile;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.UUID;
+
+/**
+ * Writes a copy of a project with a {@link BakedClip} or with --compress a {@link CompressedClip} for every Animated Pose node,
+ * used by the runtime instead of the keyframes. With --strip the keyframes are left out, so the copy is smaller but
+ * can no longer be opened in the editor.
+ */
+public class ClipBaker {
+    public static void main(String[] args) throws IOException {
+        float rate = 60;
+        float tolerance = 0.001f;
+        boolean compress = false;
+        boolean strip = false;
+        File input = null;
+        File output = null;
+        for(int i = 0;i < args.length;i++){
+            switch(args[i]){
+                case "--rate":
+                    rate = Float.parseFloat(args[++i]);
+                    break;
+                case "--tolerance":
+                    tolerance = Float.parseFloat(args[++i]);
+                    break;
+                case "--compress":
+                    compress = true;
+                    break;
+                case "--strip":
+                    strip = true;
+                    break;
+                default:
+                    if(input == null)
+                        input = new File(args[i]);
+                    else
+                        output = new File(args[i]);
+            }
+        }
+        if(input == null || output == null){
+            System.err.println("usage: ClipBaker [--rate 60] [--tolerance 0.001] [--compress] [--strip] project.ispr baked.ispr");
+            System.exit(1);
+        }
+        GdxNativesLoader.load();
+        AnimatedSprite sprite = new AnimatedSprite();
+        JSONObject graph = ProjectFile.read(input, sprite, false);
+        if(compress){
+            CompressedClip.Report report = new CompressedClip.Report();
+            CompressedClip.compressGraph(graph, rate, tolerance, strip, report);
+            HashMap<UUID, String> names = new HashMap<>();
+            for(AnimatedSpriteBone bone : sprite.bones.values()){
+                names.put(bone.id, bone.name);
+            }
+            System.out.print(report.format(names));
+        } else {
+            BakedClip.bakeGraph(graph, rate, tolerance, strip);
+        }
+        ProjectFile.write(output, sprite, graph);
+    }
+}
@@ -0,0 +1,198 @@
+package com.github.bitsky.headless;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.PixmapIO;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import com.badlogic.gdx.utils.ShortArray;
+import com.github.bitsky.AnimatedSprite;
+import com.github.bitsky.PoseBuffer;
+import com.github.bitsky.ProjectFile;
+import com.github.bitsky.SpriteAnimation;
+import com.github.bitsky.VertexedImage;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Renders every Animated Pose node of .ispr projects into sprite sheet atlases without opening a window,
+ * projects are exported in parallel.
+ */
+public class HeadlessExporter {
+    public float fps = 30;
+    public int pageSize = 2048;
+    public int padding = 2;
+    public boolean writeFrames = false;
+    public File outputDirectory = new File("export");
+
+    public static void main(String[] args) throws InterruptedException {
+        HeadlessExporter exporter = new HeadlessExporter();
+        int threads = Runtime.getRuntime().availableProcessors();
+        ArrayList<File> projects = new ArrayList<>();
+        for(int i = 0;i < args.length;i++){
+            switch(args[i]){
+                case "--fps":
+                    exporter.fps = Float.parseFloat(args[++i]);
+                    break;
+                case "--page-size":
+                    exporter.pageSize = Integer.parseInt(args[++i]);
+                    break;
+                case "--padding":
+                    exporter.padding = Integer.parseInt(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--out":
+                    exporter.outputDirectory = new File(args[++i]);
+                    break;
+                case "--frames":
+                    exporter.writeFrames = true;
+                    break;
+                default:
+                    projects.add(new File(args[i]));
+            }
+        }
+        if(projects.isEmpty()){
+            System.err.println("usage: HeadlessExporter [--fps 30] [--page-size 2048] [--padding 2] [--threads n] [--out export] [--frames] project.ispr...");
+            System.exit(1);
+        }
+        GdxNativesLoader.load();
+        int failed = exporter.exportAll(projects, threads);
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    /**
+     * @return number of projects that failed to export
+     */
+    public int exportAll(List<File> projects, int threads) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, projects.size())));
+        ArrayList<Future<String>> futures = new ArrayList<>();
+        for(File project : projects){
+            futures.add(executor.submit(() -> exportProject(project)));
+        }
+        executor.shutdown();
+        int failed = 0;
+        for(int i = 0;i < futures.size();i++){
+            try {
+                System.out.println(futures.get(i).get());
+            } catch (ExecutionException e) {
+                System.err.println("Failed to export " + projects.get(i) + ": " + e.getCause());
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    public String exportProject(File file) throws IOException {
+        String name = file.getName().contains(".") ? file.getName().substring(0, file.getName().lastIndexOf('.')) : file.getName();
+        File directory = new File(outputDirectory, name);
+        directory.mkdirs();
+
+        AnimatedSprite sprite = new AnimatedSprite();
+        JSONObject graph = ProjectFile.read(file, sprite, false);
+        try {
+            SpriteSheetPacker packer = new SpriteSheetPacker(pageSize, padding);
+            ArrayList<SoftwareRasterizer.Texels> texels = new ArrayList<>();
+            ArrayList<float[]> textureCoordinates = new ArrayList<>();
+            for(VertexedImage image : sprite.images){
+                texels.add(new SoftwareRasterizer.Texels(image.pixmap));
+                textureCoordinates.add(getTextureCoordinates(image));
+            }
+            JSONObject nodes = graph.getJSONObject("nodes");
+            int animations = 0;
+            for(String id : new TreeSet<>(nodes.keySet())){
+                JSONObject node = nodes.getJSONObject(id);
+                if(!node.getString("type").equals("Animated Pose"))
+                    continue;
+                SpriteAnimation animation = new SpriteAnimation();
+                animation.load(node.getJSONObject("animation"));
+                renderAnimation(sprite, texels, textureCoordinates, animation, node.optBoolean("looping"), id, packer, directory);
+                animations++;
+            }
+            int pages = packer.write(directory, name);
+            return name + ": " + animations + " animations, " + packer.getAddedFrameCount() + " frames, "
+                + packer.getUniqueFrameCount() + " unique, " + pages + " pages";
+        } finally {
+            for(VertexedImage image : sprite.images){
+                if(image.pixmap != null)
+                    image.pixmap.dispose();
+            }
+        }
+    }
+
+    /**
+     * Samples the animation at {@link #fps}. All frames share one canvas covering the animation, so trimmed offsets stay aligned.
+     */
+    public void renderAnimation(AnimatedSprite sprite, List<SoftwareRasterizer.Texels> texels, List<float[]> textureCoordinates,
+                                SpriteAnimation animation, boolean looping, String name, SpriteSheetPacker packer, File directory){
+        float length = animation.getAnimationLength();
+        int frameCount = Math.max(1, looping ? Math.round(length*fps) : (int) Math.floor(length*fps)+1);
+        PoseBuffer pose = new PoseBuffer(sprite.getBoneCapacity());
+        float[][][] deformed = new float[frameCount][sprite.images.size()][];
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for(int frame = 0;frame < frameCount;frame++){
+            animation.getPose(frame/fps, sprite, pose);
+            for(int i = 0;i < sprite.images.size();i++){
+                VertexedImage image = sprite.images.get(i);
+                float[] vertices = image.deform(sprite, pose).clone();
+                deformed[frame][i] = vertices;
+                if(image.getTriangles().size == 0)
+                    continue;
+                for(int j = 0;j < vertices.length;j += 2){
+                    minX = Math.min(minX, vertices[j]);
+                    maxX = Math.max(maxX, vertices[j]);
+                    minY = Math.min(minY, vertices[j+1]);
+                    maxY = Math.max(maxY, vertices[j+1]);
+                }
+            }
+        }
+        if(minX > maxX){
+            minX = maxX = minY = maxY = 0;
+        }
+        float originX = (float) Math.floor(minX);
+        float originY = (float) Math.ceil(maxY);
+        int width = Math.max(1, (int) Math.ceil(maxX)-(int) originX);
+        int height = Math.max(1, (int) originY-(int) Math.floor(minY));
+
+        SoftwareRasterizer rasterizer = new SoftwareRasterizer(width, height);
+        File framesDirectory = new File(directory, name);
+        if(writeFrames)
+            framesDirectory.mkdirs();
+        for(int frame = 0;frame < frameCount;frame++){
+            rasterizer.clear();
+            for(int i = 0;i < sprite.images.size();i++){
+                ShortArray triangles = sprite.images.get(i).getTriangles();
+                rasterizer.drawTriangles(texels.get(i), deformed[frame][i], textureCoordinates.get(i), triangles, originX, originY);
+            }
+            packer.add(name, frame, rasterizer.pixels, width, height);
+            if(writeFrames){
+                Pixmap pixmap = SoftwareRasterizer.toPixmap(rasterizer.pixels, width, height);
+                try {
+                    PixmapIO.writePNG(new FileHandle(new File(framesDirectory, String.format("%04d.png", frame))), pixmap);
+                } finally {
+                    pixmap.dispose();
+                }
+            }
+        }
+    }
+    private static float[] getTextureCoordinates(VertexedImage image){
+        float[] coordinates = new float[image.points.size()*2];
+        for(int i = 0;i < image.points.size();i++){
+            Vector2 position = image.points.get(i).position;
+            coordinates[i*2] = position.x;
+            coordinates[i*2+1] = image.getHeight()-position.y;
+        }
+        return coordinates;
+    }
+}
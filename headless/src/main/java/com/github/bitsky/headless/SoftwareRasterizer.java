@@ -0,0 +1,156 @@
+package com.github.bitsky.headless;
+
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.utils.ShortArray;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Draws textured triangles into an RGBA8888 int buffer without a GL context, pixels use the same 0xRRGGBBAA layout as {@link Pixmap#getPixel(int, int)}.
+ */
+public class SoftwareRasterizer {
+    public final int width;
+    public final int height;
+    public final int[] pixels;
+    public SoftwareRasterizer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.pixels = new int[width*height];
+    }
+    public void clear(){
+        Arrays.fill(pixels, 0);
+    }
+
+    /**
+     * @param positions world positions, two floats per vertex, y pointing up
+     * @param textureCoordinates texel coordinates of every vertex, y pointing down
+     * @param originX world x of the left edge of the buffer
+     * @param originY world y of the top edge of the buffer
+     */
+    public void drawTriangles(Texels texture, float[] positions, float[] textureCoordinates, ShortArray triangles, float originX, float originY){
+        for(int i = 0;i+2 < triangles.size;i += 3){
+            int a = triangles.get(i);
+            int b = triangles.get(i+1);
+            int c = triangles.get(i+2);
+            float x0 = positions[a*2]-originX, y0 = originY-positions[a*2+1];
+            float x1 = positions[b*2]-originX, y1 = originY-positions[b*2+1];
+            float x2 = positions[c*2]-originX, y2 = originY-positions[c*2+1];
+            float area = edge(x0, y0, x1, y1, x2, y2);
+            if(Math.abs(area) < 1e-6f)
+                continue;
+            if(area < 0){
+                int swap = b;
+                b = c;
+                c = swap;
+                float sx = x1, sy = y1;
+                x1 = x2;
+                y1 = y2;
+                x2 = sx;
+                y2 = sy;
+                area = -area;
+            }
+            drawTriangle(texture, x0, y0, x1, y1, x2, y2, area,
+                textureCoordinates[a*2], textureCoordinates[a*2+1],
+                textureCoordinates[b*2], textureCoordinates[b*2+1],
+                textureCoordinates[c*2], textureCoordinates[c*2+1]);
+        }
+    }
+    private void drawTriangle(Texels texture, float x0, float y0, float x1, float y1, float x2, float y2, float area,
+                              float u0, float v0, float u1, float v1, float u2, float v2){
+        int minX = Math.max(0, (int) Math.floor(Math.min(x0, Math.min(x1, x2))));
+        int maxX = Math.min(width-1, (int) Math.ceil(Math.max(x0, Math.max(x1, x2))));
+        int minY = Math.max(0, (int) Math.floor(Math.min(y0, Math.min(y1, y2))));
+        int maxY = Math.min(height-1, (int) Math.ceil(Math.max(y0, Math.max(y1, y2))));
+        boolean topLeft0 = isTopLeft(x1, y1, x2, y2);
+        boolean topLeft1 = isTopLeft(x2, y2, x0, y0);
+        boolean topLeft2 = isTopLeft(x0, y0, x1, y1);
+        float inverseArea = 1f/area;
+        for(int py = minY;py <= maxY;py++){
+            float cy = py+0.5f;
+            for(int px = minX;px <= maxX;px++){
+                float cx = px+0.5f;
+                float w0 = edge(x1, y1, x2, y2, cx, cy);
+                float w1 = edge(x2, y2, x0, y0, cx, cy);
+                float w2 = edge(x0, y0, x1, y1, cx, cy);
+                if(w0 < 0 || w1 < 0 || w2 < 0)
+                    continue;
+                if((w0 == 0 && !topLeft0) || (w1 == 0 && !topLeft1) || (w2 == 0 && !topLeft2))
+                    continue;
+                w0 *= inverseArea;
+                w1 *= inverseArea;
+                w2 *= inverseArea;
+                float u = u0*w0 + u1*w1 + u2*w2;
+                float v = v0*w0 + v1*w1 + v2*w2;
+                int index = py*width+px;
+                pixels[index] = blend(pixels[index], texture.sample(u, v));
+            }
+        }
+    }
+    private static float edge(float ax, float ay, float bx, float by, float px, float py){
+        return (bx-ax)*(py-ay) - (by-ay)*(px-ax);
+    }
+    /**
+     * Picks exactly one of two triangles sharing an edge, so shared edges are not blended twice.
+     */
+    private static boolean isTopLeft(float ax, float ay, float bx, float by){
+        float dy = by-ay;
+        return dy < 0 || (dy == 0 && bx-ax > 0);
+    }
+    private static int blend(int destination, int source){
+        int sourceAlpha = source & 0xFF;
+        if(sourceAlpha == 0)
+            return destination;
+        if(sourceAlpha == 255)
+            return source;
+        int destinationAlpha = destination & 0xFF;
+        int remaining = destinationAlpha*(255-sourceAlpha)/255;
+        int alpha = sourceAlpha+remaining;
+        int r = (((source>>>24)&0xFF)*sourceAlpha + ((destination>>>24)&0xFF)*remaining)/alpha;
+        int g = (((source>>>16)&0xFF)*sourceAlpha + ((destination>>>16)&0xFF)*remaining)/alpha;
+        int b = (((source>>>8)&0xFF)*sourceAlpha + ((destination>>>8)&0xFF)*remaining)/alpha;
+        return (r<<24) | (g<<16) | (b<<8) | alpha;
+    }
+
+    public static int[] readPixels(Pixmap pixmap){
+        Pixmap rgba = pixmap;
+        if(pixmap.getFormat() != Pixmap.Format.RGBA8888){
+            rgba = new Pixmap(pixmap.getWidth(), pixmap.getHeight(), Pixmap.Format.RGBA8888);
+            rgba.setBlending(Pixmap.Blending.None);
+            rgba.drawPixmap(pixmap, 0, 0);
+        }
+        ByteBuffer buffer = rgba.getPixels().duplicate().order(ByteOrder.BIG_ENDIAN);
+        int[] pixels = new int[pixmap.getWidth()*pixmap.getHeight()];
+        for(int i = 0;i < pixels.length;i++){
+            pixels[i] = buffer.getInt(i*4);
+        }
+        if(rgba != pixmap)
+            rgba.dispose();
+        return pixels;
+    }
+    public static Pixmap toPixmap(int[] pixels, int width, int height){
+        Pixmap pixmap = new Pixmap(width, height, Pixmap.Format.RGBA8888);
+        ByteBuffer buffer = pixmap.getPixels().duplicate().order(ByteOrder.BIG_ENDIAN);
+        for(int i = 0;i < width*height;i++){
+            buffer.putInt(i*4, pixels[i]);
+        }
+        return pixmap;
+    }
+
+    public static class Texels {
+        public final int width;
+        public final int height;
+        public final int[] pixels;
+        public Texels(Pixmap pixmap) {
+            this.width = pixmap.getWidth();
+            this.height = pixmap.getHeight();
+            this.pixels = readPixels(pixmap);
+        }
+        public int sample(float u, float v){
+            int x = Math.min(Math.max((int) u, 0), width-1);
+            int y = Math.min(Math.max((int) v, 0), height-1);
+            return pixels[y*width+x];
+        }
+    }
+}
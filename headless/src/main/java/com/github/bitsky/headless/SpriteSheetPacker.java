@@ -0,0 +1,209 @@
+package com.github.bitsky.headless;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.PixmapIO;
+import com.badlogic.gdx.math.MathUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Trims frames to their opaque bounds, stores identical frames once and shelf packs them into pages of a libGDX texture atlas.
+ */
+public class SpriteSheetPacker {
+    public final int pageSize;
+    public final int padding;
+    private final ArrayList<Frame> uniqueFrames;
+    private final HashMap<Integer, ArrayList<Frame>> framesByHash;
+    private final ArrayList<Region> regions;
+    private int addedFrames;
+    public SpriteSheetPacker(int pageSize, int padding) {
+        this.pageSize = pageSize;
+        this.padding = padding;
+        this.uniqueFrames = new ArrayList<>();
+        this.framesByHash = new HashMap<>();
+        this.regions = new ArrayList<>();
+    }
+    /**
+     * @throws IllegalArgumentException if the trimmed frame does not fit on a page
+     */
+    public void add(String name, int index, int[] pixels, int width, int height){
+        Frame frame = Frame.trim(pixels, width, height);
+        if(frame.width > pageSize || frame.height > pageSize)
+            throw new IllegalArgumentException("Frame " + index + " of animation " + name + " is " + frame.width + "x" + frame.height
+                + " after trimming, larger than the page size " + pageSize);
+        ArrayList<Frame> candidates = framesByHash.computeIfAbsent(frame.hash, hash -> new ArrayList<>());
+        Frame unique = null;
+        for(Frame candidate : candidates){
+            if(candidate.isSameAs(frame)){
+                unique = candidate;
+                break;
+            }
+        }
+        if(unique == null){
+            unique = frame;
+            candidates.add(frame);
+            uniqueFrames.add(frame);
+        }
+        regions.add(new Region(name, index, unique));
+        addedFrames++;
+    }
+    public int getAddedFrameCount(){
+        return addedFrames;
+    }
+    public int getUniqueFrameCount(){
+        return uniqueFrames.size();
+    }
+
+    /**
+     * Writes name.png, name2.png... and name.atlas into directory, returns the number of pages.
+     */
+    public int write(File directory, String name) throws IOException {
+        ArrayList<int[]> pageSizes = pack();
+        StringBuilder atlas = new StringBuilder();
+        for(int page = 0;page < pageSizes.size();page++){
+            int width = pageSizes.get(page)[0];
+            int height = pageSizes.get(page)[1];
+            String fileName = name + (page == 0 ? "" : String.valueOf(page+1)) + ".png";
+            int[] pixels = new int[width*height];
+            for(Frame frame : uniqueFrames){
+                if(frame.page != page)
+                    continue;
+                for(int y = 0;y < frame.height;y++){
+                    System.arraycopy(frame.pixels, y*frame.width, pixels, (frame.y+y)*width+frame.x, frame.width);
+                }
+            }
+            Pixmap pixmap = SoftwareRasterizer.toPixmap(pixels, width, height);
+            try {
+                PixmapIO.writePNG(new FileHandle(new File(directory, fileName)), pixmap);
+            } finally {
+                pixmap.dispose();
+            }
+
+            atlas.append('\n').append(fileName).append('\n');
+            atlas.append("size:").append(width).append(',').append(height).append('\n');
+            atlas.append("format:RGBA8888\n");
+            atlas.append("filter:Nearest,Nearest\n");
+            atlas.append("repeat:none\n");
+            for(Region region : regions){
+                Frame frame = region.frame;
+                if(frame.page != page)
+                    continue;
+                atlas.append(region.name).append('\n');
+                atlas.append("  bounds:").append(frame.x).append(',').append(frame.y).append(',').append(frame.width).append(',').append(frame.height).append('\n');
+                atlas.append("  offsets:").append(frame.offsetX).append(',').append(frame.originalHeight-frame.offsetY-frame.height).append(',')
+                    .append(frame.originalWidth).append(',').append(frame.originalHeight).append('\n');
+                atlas.append("  index:").append(region.index).append('\n');
+            }
+        }
+        Files.write(new File(directory, name + ".atlas").toPath(), atlas.toString().getBytes(StandardCharsets.UTF_8));
+        return pageSizes.size();
+    }
+
+    /**
+     * Places unique frames on shelves sorted by height, pages are shrunk to the smallest power of two holding their frames.
+     */
+    private ArrayList<int[]> pack(){
+        ArrayList<Frame> sorted = new ArrayList<>(uniqueFrames);
+        sorted.sort((a, b) -> a.height != b.height ? Integer.compare(b.height, a.height) : Integer.compare(b.width, a.width));
+        ArrayList<int[]> pageSizes = new ArrayList<>();
+        int page = -1;
+        int x = 0, y = 0, shelfHeight = 0, usedWidth = 0, usedHeight = 0;
+        for(Frame frame : sorted){
+            if(page != -1 && x + frame.width > pageSize){
+                x = 0;
+                y += shelfHeight + padding;
+                shelfHeight = 0;
+            }
+            if(page == -1 || y + frame.height > pageSize){
+                if(page != -1)
+                    pageSizes.add(new int[]{MathUtils.nextPowerOfTwo(usedWidth), MathUtils.nextPowerOfTwo(usedHeight)});
+                page++;
+                x = 0;
+                y = 0;
+                shelfHeight = 0;
+                usedWidth = 0;
+                usedHeight = 0;
+            }
+            frame.page = page;
+            frame.x = x;
+            frame.y = y;
+            x += frame.width + padding;
+            shelfHeight = Math.max(shelfHeight, frame.height);
+            usedWidth = Math.max(usedWidth, frame.x + frame.width);
+            usedHeight = Math.max(usedHeight, frame.y + frame.height);
+        }
+        if(page != -1)
+            pageSizes.add(new int[]{MathUtils.nextPowerOfTwo(usedWidth), MathUtils.nextPowerOfTwo(usedHeight)});
+        return pageSizes;
+    }
+
+    private static class Region {
+        public final String name;
+        public final int index;
+        public final Frame frame;
+        public Region(String name, int index, Frame frame) {
+            this.name = name;
+            this.index = index;
+            this.frame = frame;
+        }
+    }
+    private static class Frame {
+        public final int[] pixels;
+        public final int width;
+        public final int height;
+        public final int offsetX;
+        public final int offsetY;
+        public final int originalWidth;
+        public final int originalHeight;
+        public final int hash;
+        public int page;
+        public int x;
+        public int y;
+        private Frame(int[] pixels, int width, int height, int offsetX, int offsetY, int originalWidth, int originalHeight) {
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+            this.originalWidth = originalWidth;
+            this.originalHeight = originalHeight;
+            this.hash = 31*(31*(31*Arrays.hashCode(pixels) + width) + offsetX) + offsetY;
+        }
+        /**
+         * Cuts away fully transparent rows and columns, an empty frame becomes a single transparent pixel.
+         */
+        public static Frame trim(int[] pixels, int width, int height){
+            int minX = width, minY = height, maxX = -1, maxY = -1;
+            for(int y = 0;y < height;y++){
+                for(int x = 0;x < width;x++){
+                    if((pixels[y*width+x] & 0xFF) == 0)
+                        continue;
+                    minX = Math.min(minX, x);
+                    maxX = Math.max(maxX, x);
+                    minY = Math.min(minY, y);
+                    maxY = Math.max(maxY, y);
+                }
+            }
+            if(maxX == -1)
+                return new Frame(new int[1], 1, 1, 0, 0, width, height);
+            int trimmedWidth = maxX-minX+1;
+            int trimmedHeight = maxY-minY+1;
+            int[] trimmed = new int[trimmedWidth*trimmedHeight];
+            for(int y = 0;y < trimmedHeight;y++){
+                System.arraycopy(pixels, (minY+y)*width+minX, trimmed, y*trimmedWidth, trimmedWidth);
+            }
+            return new Frame(trimmed, trimmedWidth, trimmedHeight, minX, minY, width, height);
+        }
+        public boolean isSameAs(Frame other){
+            return width == other.width && height == other.height && offsetX == other.offsetX && offsetY == other.offsetY
+                && originalWidth == other.originalWidth && originalHeight == other.originalHeight && Arrays.equals(pixels, other.pixels);
+        }
+    }
+}